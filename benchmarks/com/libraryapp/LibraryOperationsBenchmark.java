@@ -0,0 +1,134 @@
+package com.libraryapp;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+// Library hot paths over synthetic catalogs, with uniform or Zipf-skewed key
+// choice. Run with any thread count (-t), e.g.
+//   mvn -Pjmh package
+//   java -jar target/benchmarks.jar -p size=1000,100000 -t 4
+// 10M-item catalogs need -jvmArgsAppend -Xmx16g.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LibraryOperationsBenchmark {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 1);
+
+    @Param({"1000", "100000"})
+    int size;
+
+    @Param({"uniform", "zipf"})
+    String distribution;
+
+    Library library;
+    Isbn[] isbns;
+    String[] memberIds;
+    ZipfGenerator zipf;
+    AtomicInteger nextNewBook;
+
+    // per-thread key stream and borrowing member, so threads never share a loan
+    @State(Scope.Thread)
+    public static class Caller {
+        SplittableRandom random;
+        String memberId;
+
+        @Setup(Level.Trial)
+        public void setUp(LibraryOperationsBenchmark bench, ThreadParams thread) {
+            random = new SplittableRandom(42 + thread.getThreadIndex());
+            memberId = bench.memberIds[thread.getThreadIndex() % bench.memberIds.length];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int members = Math.max(1000, size / 10);
+        library = SyntheticCatalog.create(size, members);
+        isbns = new Isbn[size];
+        for (int i = 0; i < size; i++) {
+            isbns[i] = SyntheticCatalog.isbn(i);
+        }
+        memberIds = new String[members];
+        for (int i = 0; i < members; i++) {
+            memberIds[i] = SyntheticCatalog.memberId(i);
+        }
+        zipf = distribution.equals("zipf") ? new ZipfGenerator(size, 1.0) : null;
+        nextNewBook = new AtomicInteger(size);
+    }
+
+    private Isbn pickBook(Caller caller) {
+        return isbns[zipf != null ? zipf.next(caller.random) : caller.random.nextInt(size)];
+    }
+
+    @Benchmark
+    public LibraryItem findItemByIsbn(Caller caller) throws LibraryException {
+        return library.findItemByIsbn(pickBook(caller));
+    }
+
+    @Benchmark
+    public LibraryUser findUserById(Caller caller) throws LibraryException {
+        return library.findUserById(memberIds[caller.random.nextInt(memberIds.length)]);
+    }
+
+    // a borrow attempt, plus its return when the copy was free
+    @Benchmark
+    public void borrowReturn(Caller caller, Blackhole blackhole) {
+        Isbn isbn = pickBook(caller);
+        LoanOutcome borrowed = library.tryBorrow(caller.memberId, isbn, TODAY);
+        blackhole.consume(borrowed);
+        if (borrowed instanceof LoanRecord) {
+            blackhole.consume(library.tryReturn(caller.memberId, isbn, TODAY));
+        }
+    }
+
+    // importBooks rather than addBook, which prints to the console
+    @Benchmark
+    public boolean addRemove() throws LibraryException {
+        BookItem book = SyntheticCatalog.book(nextNewBook.getAndIncrement());
+        library.importBooks(List.of(book));
+        return library.removeBook(book.getIsbn());
+    }
+
+    // two adjacent title words match roughly 0.1% of the catalog
+    @Benchmark
+    public List<BookItem> titleSearch(Caller caller) {
+        return library.searchBooks(SyntheticCatalog.searchTerm(caller.random) + " "
+                + SyntheticCatalog.searchTerm(caller.random));
+    }
+
+    // two title words, the first with a letter dropped
+    @Benchmark
+    public List<SearchHit> fuzzySearch(Caller caller) {
+        String word = SyntheticCatalog.searchTerm(caller.random);
+        int drop = caller.random.nextInt(word.length());
+        return library.fuzzySearchBooks(word.substring(0, drop) + word.substring(drop + 1) + " "
+                + SyntheticCatalog.searchTerm(caller.random), 10);
+    }
+
+    @Benchmark
+    public List<Suggestion> suggest(Caller caller) {
+        String word = SyntheticCatalog.searchTerm(caller.random);
+        return library.suggest(word.substring(0, 1 + caller.random.nextInt(word.length())), 10);
+    }
+}
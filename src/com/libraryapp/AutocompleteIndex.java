@@ -0,0 +1,449 @@
+package com.libraryapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Type-ahead index over book titles and authors and member ids and names.
+// Every word start of a field is a key, so "ja" completes "Effective Java",
+// and completions come back most borrowed first.
+//
+// A radix trie kept in parallel int arrays. Edge labels point into one char
+// pool that holds each field's lowercased text once, so a key costs a leaf,
+// at most one split node and a link to its field: roughly 70 bytes, plus two
+// bytes per character of text. Each node records the highest popularity
+// below it, so a query expands nodes best first and stops as soon as nothing
+// left can make its top results.
+//
+// Adding and removing need outside exclusion (Library's catalog write lock);
+// completions and borrowed() may run alongside each other. Removed books and
+// members are skipped until they outnumber live ones, then the trie is rebuilt.
+public final class AutocompleteIndex {
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    // A subject is a book (keyed by its Isbn) or a member (keyed by id) with
+    // two fields, 2s and 2s + 1: title and author, or id and name.
+    private final Map<Object, Integer> subjects = new HashMap<>();
+    private Object[] subjectKeys = new Object[16]; // null once removed
+    private AtomicIntegerArray popularity = new AtomicIntegerArray(16);
+    private int subjectCount;
+    private int liveSubjects;
+
+    // per field: the text as written and its first link; the links of a field
+    // run up to the next field's first link
+    private String[] fieldTexts = new String[32];
+    private int[] fieldLinks = new int[32];
+
+    private char[] pool = new char[1024];
+    private int poolSize;
+
+    // trie nodes; the root has an empty label
+    private int[] firstChild = new int[64];
+    // {first char of the label, next sibling} in one long, so walking a
+    // child list touches one array
+    private long[] siblings = new long[64];
+    private int[] parent = new int[64];
+    private int[] labelStart = new int[64];
+    private int[] labelLength = new int[64];
+    private int[] nodeLinks = new int[64]; // head of the node's link chain
+    private AtomicIntegerArray best = new AtomicIntegerArray(64); // max popularity below
+    private int nodeCount;
+
+    // links: a key ends at linkNode; chain holds {field, next link at the
+    // node} side by side, as queries read both
+    private int[] linkNode = new int[64];
+    private int[] chain = new int[128];
+    private int linkCount;
+
+    public AutocompleteIndex() {
+        newNode(NONE, 0, 0);
+    }
+
+    // adding a book again replaces its text and keeps its popularity
+    public void addBook(BookItem book) {
+        add(book.getIsbn(), book.getTitle(), book.getAuthor());
+    }
+
+    public void addUser(LibraryUser user) {
+        add(user.getId(), user.getId(), user.getName());
+    }
+
+    public void removeBook(Isbn isbn) {
+        remove(isbn);
+    }
+
+    public void removeUser(String memberId) {
+        remove(memberId);
+    }
+
+    // counts one borrow for the book and the member, whichever are indexed
+    public void borrowed(Isbn isbn, String memberId) {
+        bump(subjects.get(isbn));
+        bump(subjects.get(memberId));
+    }
+
+    // replaces every popularity with the given count (0 if absent), keyed
+    // like the subjects: Isbn for books, member id for members
+    public void resetPopularity(Map<Object, Integer> counts) {
+        for (int s = 0; s < subjectCount; s++) {
+            Object key = subjectKeys[s];
+            popularity.set(s, key == null ? 0 : counts.getOrDefault(key, 0));
+        }
+        for (int n = 0; n < nodeCount; n++) {
+            best.set(n, 0);
+        }
+        for (int field = 0; field < 2 * subjectCount; field++) {
+            int p = popularity.get(field >>> 1);
+            for (int l = fieldLinks[field]; l < linksEnd(field); l++) {
+                raise(linkNode[l], p);
+            }
+        }
+    }
+
+    // completions of the prefix at any word start, most borrowed first
+    public List<Suggestion> complete(String prefix, int limit) {
+        String q = normalize(prefix).stripLeading();
+        if (q.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        int node = ROOT;
+        for (int i = 0; i < q.length(); ) {
+            int next = findChild(node, q.charAt(i));
+            if (next == NONE) {
+                return List.of();
+            }
+            int start = labelStart[next];
+            int length = labelLength[next];
+            for (int k = 0; k < length && i < q.length(); k++, i++) {
+                if (pool[start + k] != q.charAt(i)) {
+                    return List.of();
+                }
+            }
+            node = next;
+        }
+
+        // {best below, node}, highest first
+        PriorityQueue<Long> frontier = new PriorityQueue<>(Comparator.reverseOrder());
+        frontier.add(pack(best.get(node), node));
+        // worst result on top, so it is the one displaced
+        PriorityQueue<Suggestion> top = new PriorityQueue<>(limit + 1, Suggestion.BEST_FIRST.reversed());
+        Set<Integer> seen = new HashSet<>();
+        while (!frontier.isEmpty()) {
+            long head = frontier.poll();
+            int n = (int) head;
+            if (top.size() == limit && (int) (head >>> 32) <= top.peek().popularity()) {
+                break;
+            }
+            for (int l = nodeLinks[n]; l != NONE; l = chain[2 * l + 1]) {
+                int field = chain[2 * l];
+                int s = field >>> 1;
+                int p = popularity.get(s);
+                if ((top.size() == limit && p <= top.peek().popularity())
+                        || subjectKeys[s] == null || !seen.add(field)) {
+                    continue;
+                }
+                top.add(suggestion(field, p));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+            for (int c = firstChild[n]; c != NONE; c = nextSibling(c)) {
+                frontier.add(pack(best.get(c), c));
+            }
+        }
+        List<Suggestion> result = new ArrayList<>(top);
+        result.sort(Suggestion.BEST_FIRST);
+        return result;
+    }
+
+    public int size() {
+        return liveSubjects;
+    }
+
+    private void add(Object key, String first, String second) {
+        Integer previous = subjects.get(key);
+        int p = 0;
+        if (previous != null) {
+            p = popularity.get(previous);
+            subjectKeys[previous] = null;
+            liveSubjects--;
+        }
+        int s = subjectCount++;
+        if (s == subjectKeys.length) {
+            subjectKeys = Arrays.copyOf(subjectKeys, s * 2);
+            popularity = grow(popularity, s * 2);
+            fieldTexts = Arrays.copyOf(fieldTexts, s * 4);
+            fieldLinks = Arrays.copyOf(fieldLinks, s * 4);
+        }
+        subjectKeys[s] = key;
+        popularity.set(s, p);
+        liveSubjects++;
+        subjects.put(key, s);
+        addField(2 * s, first, p);
+        addField(2 * s + 1, second, p);
+        if (previous != null) {
+            compactIfSparse();
+        }
+    }
+
+    private void remove(Object key) {
+        Integer s = subjects.remove(key);
+        if (s == null) {
+            return;
+        }
+        subjectKeys[s] = null;
+        liveSubjects--;
+        compactIfSparse();
+    }
+
+    private void compactIfSparse() {
+        int dead = subjectCount - liveSubjects;
+        if (dead > 1024 && dead > liveSubjects) {
+            rebuild();
+        }
+    }
+
+    private void addField(int field, String text, int p) {
+        fieldTexts[field] = text;
+        fieldLinks[field] = linkCount;
+        String normalized = normalize(text);
+        int start = poolSize;
+        int end = start + normalized.length();
+        if (end > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(end, pool.length * 2));
+        }
+        normalized.getChars(0, normalized.length(), pool, start);
+        poolSize = end;
+        for (int i = start; i < end; i++) {
+            if (Character.isLetterOrDigit(pool[i]) && (i == start || !Character.isLetterOrDigit(pool[i - 1]))) {
+                int node = insert(i, end);
+                link(node, field);
+                raise(node, p);
+            }
+        }
+    }
+
+    // the node where the pool text [from, to) ends, splitting an edge if needed
+    private int insert(int from, int to) {
+        int node = ROOT;
+        int i = from;
+        while (i < to) {
+            int next = findChildToFront(node, pool[i]);
+            if (next == NONE) {
+                return newNode(node, i, to - i);
+            }
+            int start = labelStart[next];
+            int length = labelLength[next];
+            int k = 0;
+            while (k < length && i + k < to && pool[start + k] == pool[i + k]) {
+                k++;
+            }
+            if (k < length) {
+                next = split(next, k);
+            }
+            node = next;
+            i += k;
+        }
+        return node;
+    }
+
+    // cuts the edge into node after k chars; returns the new upper node
+    private int split(int node, int k) {
+        int up = parent[node];
+        int mid = newNode(up, labelStart[node], k);
+        unlinkChild(up, node);
+        labelStart[node] += k;
+        labelLength[node] -= k;
+        siblings[node] = packSibling(pool[labelStart[node]], NONE);
+        parent[node] = mid;
+        firstChild[mid] = node;
+        best.set(mid, best.get(node));
+        return mid;
+    }
+
+    private int newNode(int up, int start, int length) {
+        int n = nodeCount++;
+        if (n == firstChild.length) {
+            int capacity = n * 2;
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            siblings = Arrays.copyOf(siblings, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            labelStart = Arrays.copyOf(labelStart, capacity);
+            labelLength = Arrays.copyOf(labelLength, capacity);
+            nodeLinks = Arrays.copyOf(nodeLinks, capacity);
+            best = grow(best, capacity);
+        }
+        firstChild[n] = NONE;
+        parent[n] = up;
+        labelStart[n] = start;
+        labelLength[n] = length;
+        nodeLinks[n] = NONE;
+        best.set(n, 0);
+        char first = length > 0 ? pool[start] : 0;
+        if (up != NONE) {
+            siblings[n] = packSibling(first, firstChild[up]);
+            firstChild[up] = n;
+        } else {
+            siblings[n] = packSibling(first, NONE);
+        }
+        return n;
+    }
+
+    private void unlinkChild(int up, int node) {
+        if (firstChild[up] == node) {
+            firstChild[up] = nextSibling(node);
+            return;
+        }
+        int c = firstChild[up];
+        while (nextSibling(c) != node) {
+            c = nextSibling(c);
+        }
+        siblings[c] = packSibling((char) (siblings[c] >>> 32), nextSibling(node));
+    }
+
+    // findChild that also moves the match to the head of the list, so the
+    // children most keys pass through are found first
+    private int findChildToFront(int node, char c) {
+        int previous = NONE;
+        for (int n = firstChild[node]; n != NONE; ) {
+            long sibling = siblings[n];
+            if ((char) (sibling >>> 32) == c) {
+                if (previous != NONE) {
+                    siblings[previous] = packSibling((char) (siblings[previous] >>> 32), (int) sibling);
+                    siblings[n] = packSibling(c, firstChild[node]);
+                    firstChild[node] = n;
+                }
+                return n;
+            }
+            previous = n;
+            n = (int) sibling;
+        }
+        return NONE;
+    }
+
+    private int findChild(int node, char c) {
+        for (int n = firstChild[node]; n != NONE; ) {
+            long sibling = siblings[n];
+            if ((char) (sibling >>> 32) == c) {
+                return n;
+            }
+            n = (int) sibling;
+        }
+        return NONE;
+    }
+
+    private int nextSibling(int node) {
+        return (int) siblings[node];
+    }
+
+    private static long packSibling(char first, int next) {
+        return ((long) first << 32) | (next & 0xFFFFFFFFL);
+    }
+
+    private void link(int node, int field) {
+        int l = linkCount++;
+        if (l == linkNode.length) {
+            linkNode = Arrays.copyOf(linkNode, l * 2);
+            chain = Arrays.copyOf(chain, l * 4);
+        }
+        linkNode[l] = node;
+        chain[2 * l] = field;
+        chain[2 * l + 1] = nodeLinks[node];
+        nodeLinks[node] = l;
+    }
+
+    private int linksEnd(int field) {
+        return field + 1 < 2 * subjectCount ? fieldLinks[field + 1] : linkCount;
+    }
+
+    private void bump(Integer s) {
+        if (s == null) {
+            return;
+        }
+        int p = popularity.incrementAndGet(s);
+        for (int field = 2 * s; field <= 2 * s + 1; field++) {
+            for (int l = fieldLinks[field]; l < linksEnd(field); l++) {
+                raise(linkNode[l], p);
+            }
+        }
+    }
+
+    // a node's best is never below any of its children's, so stop at the
+    // first ancestor that already has p
+    private void raise(int node, int p) {
+        for (int n = node; n != NONE; n = parent[n]) {
+            int current;
+            do {
+                current = best.get(n);
+                if (current >= p) {
+                    return;
+                }
+            } while (!best.compareAndSet(n, current, p));
+        }
+    }
+
+    private Suggestion suggestion(int field, int p) {
+        Object key = subjectKeys[field >>> 1];
+        boolean book = key instanceof Isbn;
+        boolean first = (field & 1) == 0;
+        Suggestion.Kind kind = book
+                ? (first ? Suggestion.Kind.TITLE : Suggestion.Kind.AUTHOR)
+                : (first ? Suggestion.Kind.MEMBER_ID : Suggestion.Kind.MEMBER_NAME);
+        return new Suggestion(fieldTexts[field], kind, key.toString(), p);
+    }
+
+    private void rebuild() {
+        int count = subjectCount;
+        Object[] keys = Arrays.copyOf(subjectKeys, count);
+        String[] texts = Arrays.copyOf(fieldTexts, 2 * count);
+        int[] counts = new int[count];
+        for (int s = 0; s < count; s++) {
+            counts[s] = popularity.get(s);
+        }
+        subjects.clear();
+        subjectCount = 0;
+        liveSubjects = 0;
+        poolSize = 0;
+        nodeCount = 0;
+        linkCount = 0;
+        newNode(NONE, 0, 0);
+        for (int s = 0; s < count; s++) {
+            if (keys[s] != null) {
+                add(keys[s], texts[2 * s], texts[2 * s + 1]);
+                int added = subjectCount - 1;
+                popularity.set(added, counts[s]);
+                for (int field = 2 * added; field <= 2 * added + 1; field++) {
+                    for (int l = fieldLinks[field]; l < linksEnd(field); l++) {
+                        raise(linkNode[l], counts[s]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static AtomicIntegerArray grow(AtomicIntegerArray array, int capacity) {
+        AtomicIntegerArray grown = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < array.length(); i++) {
+            grown.set(i, array.get(i));
+        }
+        return grown;
+    }
+
+    private static long pack(int popularity, int node) {
+        return ((long) popularity << 32) | node;
+    }
+
+    static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,12 @@
+package com.libraryapp;
+
+import java.util.List;
+
+// Outcome of borrowBooks/returnBooks. outcomes line up with the requested
+// ISBNs; when committed is false no loan was opened or closed.
+public record BatchResult(boolean committed, List<LoanOutcome> outcomes) {
+
+    public BatchResult {
+        outcomes = List.copyOf(outcomes);
+    }
+}
@@ -1,28 +1,101 @@
 package com.libraryapp;
 
 import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 
+// One title with one or more physical copies, numbered from 1. Copies are
+// lent by flipping their bit in an atomic bitmap, so borrowers of different
+// copies of the same title never block each other; the free count is
+// reserved before a bit is claimed, which makes "none left" a single read.
+// The free and total counts share one long. While a CatalogSnapshot is open
+// they are kept as a chain of versions stamped by the owning Library's clock,
+// so the snapshot can read them as of its version; otherwise borrow and
+// return update them in place.
 public final class BookItem implements LibraryItem, Borrowable {
 
+    // books not yet in a Library; nobody takes snapshots on it
+    private static final VersionClock UNBOUND = new VersionClock();
+
     private final Isbn isbn;
     private String title;
     private String author;
     private Genre genre;
     private int year;
-    private boolean available;
+    // copies and lent only change under the catalog write lock (addCopies)
+    private volatile int copies;
+    private volatile AtomicLongArray lent;
+    private volatile VersionClock clock = UNBOUND;
+    private final AtomicReference<Counts> counts = new AtomicReference<>();
+
+    // One version of the packed counts, newest first: total copies in the
+    // high half, free copies (which may dip below zero) in the low half. A
+    // version some reader may still see is frozen by setting the top bit,
+    // and only then replaced by a new head.
+    private static final class Counts extends AtomicLong {
+
+        static final long FROZEN = Long.MIN_VALUE;
+
+        final long stamp;
+        volatile Counts older;
+
+        Counts(long stamp, long packed, Counts older) {
+            super(packed);
+            this.stamp = stamp;
+            this.older = older;
+        }
+
+        long value() {
+            return get() & ~FROZEN;
+        }
+
+        // the packed counts as of the given version
+        long at(long version) {
+            Counts v = this;
+            while (v.stamp > version && v.older != null) {
+                v = v.older;
+            }
+            return v.value();
+        }
+
+        static long pack(int free, int copies) {
+            return (long) copies << 32 | (free & 0xFFFFFFFFL);
+        }
+
+        static int free(long packed) {
+            return (int) packed;
+        }
+
+        static int copies(long packed) {
+            return (int) (packed >>> 32) & Integer.MAX_VALUE;
+        }
+    }
 
     public BookItem(Isbn isbn, String title, String author, Genre genre, int year) {
-        this(isbn, title, author, genre, year, true);
+        this(isbn, title, author, genre, year, 1);
     }
 
     public BookItem(Isbn isbn, String title, String author, Genre genre,
             int year, boolean available) {
+        this(isbn, title, author, genre, year, 1);
+        setAvailable(available);
+    }
+
+    public BookItem(Isbn isbn, String title, String author, Genre genre,
+            int year, int copies) {
+        if (copies <= 0) {
+            throw new IllegalArgumentException("A book needs at least one copy.");
+        }
         this.isbn = Objects.requireNonNull(isbn);
         this.title = Objects.requireNonNull(title);
         this.author = Objects.requireNonNull(author);
         this.genre = Objects.requireNonNull(genre);
         this.year = year;
-        this.available = available;
+        this.copies = copies;
+        this.lent = new AtomicLongArray((copies + 63) >>> 6);
+        this.counts.set(new Counts(0, Counts.pack(copies, copies), null));
     }
 
     public Isbn getIsbn() {
@@ -51,14 +124,174 @@ public final class BookItem implements LibraryItem, Borrowable {
         return year;
     }
 
+    public int getCopies() {
+        return copies;
+    }
+
+    public int getAvailableCopies() {
+        return Math.max(0, Counts.free(counts.get().value()));
+    }
+
+    // true while at least one copy is on the shelf
     @Override
     public boolean isAvailable() {
-        return available;
+        return Counts.free(counts.get().value()) > 0;
+    }
+
+    int copiesAt(long version) {
+        return Counts.copies(counts.get().at(version));
+    }
+
+    int availableCopiesAt(long version) {
+        return Math.max(0, Counts.free(counts.get().at(version)));
+    }
+
+    // Moves the counts to the clock of the Library taking this book. Called
+    // under that Library's catalog write lock, before anyone can borrow it.
+    void bind(VersionClock owner) {
+        counts.set(new Counts(0, counts.get().value(), null));
+        clock = owner;
     }
 
+    // Adds to the free and total counts. With floor set, fails without
+    // changing anything when no copy is free. The head is changed in place
+    // unless an open reader may still need its value, so borrow and return
+    // allocate nothing while no snapshot is open.
+    private boolean adjust(int free, int total, boolean floor) {
+        VersionClock clock = this.clock;
+        long e = clock.enter();
+        try {
+            while (true) {
+                Counts head = counts.get();
+                if (head.stamp > e) {
+                    // a snapshot moved the epoch on and a newer writer got here
+                    // first; stamp this change in the new epoch instead
+                    clock.exit(e);
+                    e = clock.enter();
+                    continue;
+                }
+                long current = head.get();
+                if ((current & Counts.FROZEN) != 0) {
+                    // another writer is about to publish a newer head
+                    Thread.onSpinWait();
+                    continue;
+                }
+                if (floor && Counts.free(current) <= 0) {
+                    return false;
+                }
+                long next = Counts.pack(Counts.free(current) + free, Counts.copies(current) + total);
+                long oldest = clock.oldestReader();
+                if (oldest == Long.MAX_VALUE || head.stamp == e) {
+                    // no open reader is between the head's version and this
+                    // change, so none can tell the head was rewritten
+                    if (head.compareAndSet(current, next)) {
+                        if (oldest == Long.MAX_VALUE && head.older != null) {
+                            head.older = null;
+                        }
+                        return true;
+                    }
+                } else if (head.compareAndSet(current, current | Counts.FROZEN)) {
+                    // the oldest reader sees head or something newer, so
+                    // nothing below head is needed any more
+                    if (head.stamp <= oldest) {
+                        head.older = null;
+                    }
+                    counts.set(new Counts(e, next, head));
+                    return true;
+                }
+            }
+        } finally {
+            clock.exit(e);
+        }
+    }
+
+    // Marks every copy as on the shelf or as lent. Single-copy callers use it
+    // like the old flag; borrow and return go through claimCopy/releaseCopy.
     @Override
     public void setAvailable(boolean available) {
-        this.available = available;
+        for (int copy = 1; copy <= copies; copy++) {
+            markCopy(copy, !available);
+        }
+    }
+
+    // Takes a free copy and returns its number, or 0 if all are lent. The scan
+    // starts at a random word so concurrent borrowers spread over the bitmap.
+    public int claimCopy() {
+        if (!adjust(-1, 0, true)) {
+            return 0;
+        }
+        AtomicLongArray bits = lent;
+        int words = bits.length();
+        int start = words == 1 ? 0 : ThreadLocalRandom.current().nextInt(words);
+        while (true) {
+            for (int i = 0; i < words; i++) {
+                int w = (start + i) % words;
+                long word = bits.get(w);
+                long free = ~word & wordMask(w);
+                while (free != 0) {
+                    long bit = Long.lowestOneBit(free);
+                    if (bits.compareAndSet(w, word, word | bit)) {
+                        return (w << 6) + Long.numberOfTrailingZeros(bit) + 1;
+                    }
+                    word = bits.get(w);
+                    free = ~word & wordMask(w);
+                }
+            }
+            // the counter guaranteed us a copy; a racing claimer took the one we saw
+            Thread.onSpinWait();
+        }
+    }
+
+    // puts a lent copy back; false if it was not lent
+    public boolean releaseCopy(int copy) {
+        return markCopy(copy, false);
+    }
+
+    // Sets one copy's state directly, keeping the free counter in step; used
+    // when restoring saved loans. Returns false if it already had that state.
+    public boolean markCopy(int copy, boolean isLent) {
+        if (copy < 1 || copy > copies) {
+            throw new IllegalArgumentException("No copy " + copy + " of ISBN " + isbn.value());
+        }
+        int w = (copy - 1) >>> 6;
+        long bit = 1L << ((copy - 1) & 63);
+        AtomicLongArray bits = lent;
+        while (true) {
+            long word = bits.get(w);
+            if (((word & bit) != 0) == isLent) {
+                return false;
+            }
+            if (bits.compareAndSet(w, word, word ^ bit)) {
+                adjust(isLent ? -1 : 1, 0, false);
+                return true;
+            }
+        }
+    }
+
+    public boolean isCopyLent(int copy) {
+        int w = (copy - 1) >>> 6;
+        return copy >= 1 && copy <= copies && (lent.get(w) & (1L << ((copy - 1) & 63))) != 0;
+    }
+
+    // new copies start on the shelf; the caller must hold the catalog write
+    // lock so no claim runs against the old bitmap
+    void addCopies(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Copy count must be positive.");
+        }
+        int total = copies + count;
+        AtomicLongArray grown = new AtomicLongArray((total + 63) >>> 6);
+        for (int w = 0; w < lent.length(); w++) {
+            grown.set(w, lent.get(w));
+        }
+        lent = grown;
+        copies = total;
+        adjust(count, count, false);
+    }
+
+    private long wordMask(int word) {
+        int bitsInWord = Math.min(64, copies - (word << 6));
+        return bitsInWord == 64 ? -1L : (1L << bitsInWord) - 1;
     }
 
     @Override
@@ -74,7 +307,8 @@ public final class BookItem implements LibraryItem, Borrowable {
                 ", author='" + author + '\'' +
                 ", genre=" + genre +
                 ", year=" + year +
-                ", available=" + available +
+                ", copies=" + copies +
+                ", available=" + isAvailable() +
                 '}';
     }
 }
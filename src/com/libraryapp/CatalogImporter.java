@@ -0,0 +1,229 @@
+package com.libraryapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Streams CSV rows (isbn,title,author,genre,year) into a Library. Chunks are
+// parsed and validated in parallel and committed in file order, one catalog
+// lock acquisition per chunk. Only a bounded number of chunks is in memory.
+public final class CatalogImporter {
+
+    public record BatchReport(int batch, int rows, int imported, int duplicates, int invalid) {
+    }
+
+    public record ImportReport(int rows, int imported, int duplicates, int invalid,
+            List<BatchReport> batches, Duration elapsed) {
+
+        public double rowsPerSecond() {
+            double seconds = elapsed.toNanos() / 1e9;
+            return seconds == 0 ? rows : rows / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows: %d imported, %d duplicates, %d invalid in %d batches (%.0f rows/s)",
+                    rows, imported, duplicates, invalid, batches.size(), rowsPerSecond());
+        }
+    }
+
+    private record ParsedChunk(int batch, int rows, List<BookItem> books, int duplicates, int invalid) {
+    }
+
+    private final Library library;
+    private final int chunkSize;
+    private final int threads;
+
+    public CatalogImporter(Library library) {
+        this(library, 10_000, Runtime.getRuntime().availableProcessors());
+    }
+
+    public CatalogImporter(Library library, int chunkSize, int threads) {
+        if (chunkSize <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Chunk size and thread count must be positive");
+        }
+        this.library = Objects.requireNonNull(library);
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+    }
+
+    public ImportReport importFile(Path csv) throws IOException {
+        try (Reader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            return importFrom(reader);
+        }
+    }
+
+    public ImportReport importFrom(Reader source) throws IOException {
+        long start = System.nanoTime();
+        BufferedReader reader = source instanceof BufferedReader b ? b : new BufferedReader(source, 1 << 16);
+        ExecutorService parsers = Executors.newFixedThreadPool(threads);
+        Deque<Future<ParsedChunk>> inFlight = new ArrayDeque<>();
+        List<BatchReport> batches = new ArrayList<>();
+        try {
+            List<String> chunk = new ArrayList<>(chunkSize);
+            int batch = 0;
+            boolean first = true;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (first && line.toLowerCase(Locale.ROOT).startsWith("isbn")) {
+                    first = false;
+                    continue; // header row
+                }
+                first = false;
+                if (line.isBlank()) {
+                    continue;
+                }
+                chunk.add(line);
+                if (chunk.size() == chunkSize) {
+                    List<String> rows = chunk;
+                    int number = ++batch;
+                    inFlight.add(parsers.submit(() -> parse(number, rows)));
+                    chunk = new ArrayList<>(chunkSize);
+                    if (inFlight.size() >= threads * 2) {
+                        batches.add(commit(inFlight.poll()));
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                List<String> rows = chunk;
+                int number = ++batch;
+                inFlight.add(parsers.submit(() -> parse(number, rows)));
+            }
+            while (!inFlight.isEmpty()) {
+                batches.add(commit(inFlight.poll()));
+            }
+        } finally {
+            parsers.shutdownNow();
+        }
+
+        int rows = 0;
+        int imported = 0;
+        int duplicates = 0;
+        int invalid = 0;
+        for (BatchReport report : batches) {
+            rows += report.rows();
+            imported += report.imported();
+            duplicates += report.duplicates();
+            invalid += report.invalid();
+        }
+        return new ImportReport(rows, imported, duplicates, invalid, List.copyOf(batches),
+                Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private BatchReport commit(Future<ParsedChunk> pending) throws IOException {
+        ParsedChunk chunk;
+        try {
+            chunk = pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Import failed", e.getCause());
+        }
+        int imported = library.importBooks(chunk.books());
+        int alreadyInCatalog = chunk.books().size() - imported;
+        return new BatchReport(chunk.batch(), chunk.rows(), imported,
+                chunk.duplicates() + alreadyInCatalog, chunk.invalid());
+    }
+
+    private static ParsedChunk parse(int batch, List<String> rows) {
+        List<BookItem> books = new ArrayList<>(rows.size());
+        Set<Isbn> seen = new HashSet<>(rows.size() * 2);
+        int duplicates = 0;
+        int invalid = 0;
+        for (String row : rows) {
+            BookItem book = parseRow(row);
+            if (book == null) {
+                invalid++;
+            } else if (!seen.add(book.getIsbn())) {
+                duplicates++;
+            } else {
+                books.add(book);
+            }
+        }
+        return new ParsedChunk(batch, rows.size(), books, duplicates, invalid);
+    }
+
+    // returns null for rows that fail validation
+    static BookItem parseRow(String row) {
+        List<String> fields = splitCsv(row);
+        if (fields.size() != 5) {
+            return null;
+        }
+        try {
+            String title = fields.get(1).trim();
+            String author = fields.get(2).trim();
+            if (title.isEmpty() || author.isEmpty()) {
+                return null;
+            }
+            return new BookItem(new Isbn(fields.get(0).trim()), title, author,
+                    Genre.valueOf(fields.get(3).trim().toUpperCase(Locale.ROOT)),
+                    Integer.parseInt(fields.get(4).trim()));
+        } catch (IllegalArgumentException e) { // bad ISBN, genre or year
+            return null;
+        }
+    }
+
+    // comma separated, with "double quoted" fields and "" as an escaped quote
+    static List<String> splitCsv(String row) {
+        List<String> fields = new ArrayList<>(5);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < row.length() && row.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // usage: CatalogImporter <csv-file> [data-dir]
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: CatalogImporter <csv-file> [data-dir]");
+            return;
+        }
+        Path csv = Path.of(args[0]);
+        if (args.length > 1) {
+            try (LibraryStore store = LibraryStore.open(Path.of(args[1]), Data::createLibrary)) {
+                System.out.println(new CatalogImporter(store.library()).importFile(csv));
+                store.checkpoint();
+            }
+        } else {
+            System.out.println(new CatalogImporter(Data.createLibrary()).importFile(csv));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.libraryapp;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+// The catalog as of one version: which items exist and every book's copy
+// counts. Taking one is O(1) and never blocks borrowers or admins; the item
+// map is persistent and books keep older counts while a snapshot may ask for
+// them. Close it so those older versions can be dropped.
+public final class CatalogSnapshot implements AutoCloseable {
+
+    private final VersionClock clock;
+    private final long version;
+    private final PersistentSortedMap<String, LibraryItem> items;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    CatalogSnapshot(VersionClock clock, long version, PersistentSortedMap<String, LibraryItem> items) {
+        this.clock = clock;
+        this.version = version;
+        this.items = items;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public Optional<LibraryItem> find(String id) {
+        return Optional.ofNullable(items.get(id));
+    }
+
+    // in id order
+    public Stream<LibraryItem> items() {
+        return items.values();
+    }
+
+    public Stream<LibraryItem> itemsAfter(String id) {
+        return items.valuesAfter(id);
+    }
+
+    public int copies(BookItem book) {
+        ensureOpen();
+        return book.copiesAt(version);
+    }
+
+    public int availableCopies(BookItem book) {
+        ensureOpen();
+        return book.availableCopiesAt(version);
+    }
+
+    public boolean isAvailable(LibraryItem item) {
+        return switch (item) {
+            case BookItem book -> availableCopies(book) > 0;
+        };
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            clock.closeSnapshot(version);
+        }
+    }
+
+    // copy counts may already be dropped once closed
+    private void ensureOpen() {
+        if (closed.get()) {
+            throw new IllegalStateException("Catalog snapshot is closed.");
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.libraryapp;
+
+import java.time.LocalDate;
+
+// A loan after its book came back; kept in the LoanArchive.
+public record ClosedLoan(LoanRecord loan, LocalDate returnDate) {
+
+    public Isbn isbn() {
+        return loan.isbn();
+    }
+
+    public String memberId() {
+        return loan.memberId();
+    }
+
+    public boolean wasOverdue() {
+        return returnDate.isAfter(loan.dueDate());
+    }
+}
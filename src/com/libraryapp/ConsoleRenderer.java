@@ -0,0 +1,162 @@
+package com.libraryapp;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.stream.Stream;
+
+// Writes listings through one large buffer and flushes once per listing,
+// instead of a formatted, auto-flushed println per line.
+public final class ConsoleRenderer {
+
+    private final PrintWriter out;
+    private final StringBuilder line = new StringBuilder(128);
+
+    public ConsoleRenderer() {
+        this(System.out);
+    }
+
+    public ConsoleRenderer(PrintStream target) {
+        this.out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(target, target.charset()), 1 << 16), false);
+    }
+
+    public synchronized int renderItems(Stream<? extends LibraryItem> items) {
+        int[] count = new int[1];
+        items.forEach(item -> {
+            line.setLength(0);
+            appendItem(line, item);
+            out.println(line);
+            count[0]++;
+        });
+        out.flush();
+        return count[0];
+    }
+
+    // copy counts as of the snapshot rather than live
+    public synchronized int renderItems(CatalogSnapshot snapshot, Stream<? extends LibraryItem> items) {
+        int[] count = new int[1];
+        items.forEach(item -> {
+            line.setLength(0);
+            appendItem(line, item, snapshot);
+            out.println(line);
+            count[0]++;
+        });
+        out.flush();
+        return count[0];
+    }
+
+    public synchronized int renderItemsByType(CatalogSnapshot snapshot, Stream<? extends LibraryItem> items) {
+        int[] count = new int[1];
+        items.forEach(item -> {
+            line.setLength(0);
+            switch (item) {
+                case BookItem b -> appendItem(line.append("Book:      "), b, snapshot);
+                default -> line.append("Unknown item: ").append(item.getTitle());
+            }
+            out.println(line);
+            count[0]++;
+        });
+        out.flush();
+        return count[0];
+    }
+
+    public synchronized int renderItemsByType(Stream<? extends LibraryItem> items) {
+        int[] count = new int[1];
+        items.forEach(item -> {
+            line.setLength(0);
+            switch (item) {
+                case BookItem b -> appendItem(line.append("Book:      "), b);
+                default -> line.append("Unknown item: ").append(item.getTitle());
+            }
+            out.println(line);
+            count[0]++;
+        });
+        out.flush();
+        return count[0];
+    }
+
+    public synchronized int renderLoans(Stream<LoanRecord> loans) {
+        int[] count = new int[1];
+        loans.forEach(record -> {
+            line.setLength(0);
+            appendLoan(line, record).append(" - Borrowed ").append(record.borrowDate())
+                    .append(" - Due ").append(record.dueDate());
+            out.println(line);
+            count[0]++;
+        });
+        out.flush();
+        return count[0];
+    }
+
+    public synchronized int renderOverdueLoans(Stream<LoanRecord> loans, LocalDate asOf) {
+        int[] count = new int[1];
+        loans.forEach(record -> {
+            line.setLength(0);
+            appendLoan(line, record).append(" - Due ").append(record.dueDate())
+                    .append(" (").append(ChronoUnit.DAYS.between(record.dueDate(), asOf))
+                    .append(" days late)");
+            out.println(line);
+            count[0]++;
+        });
+        out.flush();
+        return count[0];
+    }
+
+    public synchronized int renderLoanHistory(Stream<ClosedLoan> loans) {
+        int[] count = new int[1];
+        loans.forEach(closed -> {
+            line.setLength(0);
+            appendLoan(line, closed.loan()).append(" - Borrowed ").append(closed.loan().borrowDate())
+                    .append(" - Returned ").append(closed.returnDate());
+            if (closed.wasOverdue()) {
+                line.append(" (late)");
+            }
+            out.println(line);
+            count[0]++;
+        });
+        out.flush();
+        return count[0];
+    }
+
+    public synchronized void message(String text) {
+        out.println(text);
+        out.flush();
+    }
+
+    public static String formatItem(LibraryItem item) {
+        return appendItem(new StringBuilder(96), item).toString();
+    }
+
+    static StringBuilder appendItem(StringBuilder sb, LibraryItem item) {
+        return switch (item) {
+            case BookItem b -> appendBook(sb, b, b.getCopies(), b.getAvailableCopies());
+            default -> sb.append(item.getTitle());
+        };
+    }
+
+    static StringBuilder appendItem(StringBuilder sb, LibraryItem item, CatalogSnapshot snapshot) {
+        return switch (item) {
+            case BookItem b -> appendBook(sb, b, snapshot.copies(b), snapshot.availableCopies(b));
+            default -> sb.append(item.getTitle());
+        };
+    }
+
+    private static StringBuilder appendBook(StringBuilder sb, BookItem b, int copies, int available) {
+        return sb.append(b.getTitle())
+                .append(" (ISBN ").append(b.getIsbn().value()).append(") by ")
+                .append(b.getAuthor()).append(" [").append(b.getGenre()).append("] - ")
+                .append(copies == 1
+                        ? (available > 0 ? "Available" : "On loan")
+                        : available + " of " + copies + " copies available");
+    }
+
+    static StringBuilder appendLoan(StringBuilder sb, LoanRecord record) {
+        return sb.append("Loan #").append(record.loanId())
+                .append(" - Member ").append(record.memberId())
+                .append(" - ISBN ").append(record.isbn().value());
+    }
+}
@@ -15,7 +15,7 @@ public final class Data {
         items.add(new BookItem(new Isbn("9780596009205"), "Head First Design Patterns", "Eric Freeman", Genre.TECHNOLOGY, 2004));
         items.add(new BookItem(new Isbn("9780262033848"), "Introduction to Algorithms", "Cormen et al.", Genre.TECHNOLOGY, 2009));
         items.add(new BookItem(new Isbn("9780143127741"), "Thinking, Fast and Slow", "Daniel Kahneman", Genre.PSYCHOLOGY, 2011));
-        items.add(new BookItem(new Isbn("9780307277785"), "The Lean Startup", "Eric Ries", Genre.BUSINESS, 2011));
+        items.add(new BookItem(new Isbn("9780307887894"), "The Lean Startup", "Eric Ries", Genre.BUSINESS, 2011));
         items.add(new BookItem(new Isbn("9780553380163"), "The Selfish Gene", "Richard Dawkins", Genre.SCIENCE, 2006));
         items.add(new BookItem(new Isbn("9780451524935"), "1984", "George Orwell", Genre.FICTION, 1949));
 
@@ -0,0 +1,201 @@
+package com.libraryapp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bitmap indexes over books: one bit per slot in a bitmap per genre, per
+// publication year and for availability. Structure changes need the catalog
+// write lock; availability bits are atomic so borrow and return can flip
+// them under the read lock.
+public final class FacetIndex {
+
+    private BookItem[] books = new BookItem[64];
+    private final Map<BookItem, Integer> slots = new IdentityHashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private int nextSlot;
+
+    private final BitSet live = new BitSet();
+    private final Map<Genre, BitSet> byGenre = new EnumMap<>(Genre.class);
+    private final NavigableMap<Integer, BitSet> byYear = new TreeMap<>();
+    private volatile AtomicLongArray available = new AtomicLongArray(1);
+
+    public FacetIndex() {
+        for (Genre genre : Genre.values()) {
+            byGenre.put(genre, new BitSet());
+        }
+    }
+
+    public void add(BookItem book) {
+        if (slots.containsKey(book)) {
+            return;
+        }
+        int slot = freeSlots.isEmpty() ? nextSlot++ : freeSlots.pop();
+        if (slot >= books.length) {
+            books = Arrays.copyOf(books, books.length * 2);
+        }
+        books[slot] = book;
+        slots.put(book, slot);
+        live.set(slot);
+        byGenre.get(book.getGenre()).set(slot);
+        byYear.computeIfAbsent(book.getYear(), y -> new BitSet()).set(slot);
+        ensureAvailabilityCapacity(slot);
+        setBit(available, slot, book.isAvailable());
+    }
+
+    public void remove(BookItem book) {
+        Integer slot = slots.remove(book);
+        if (slot == null) {
+            return;
+        }
+        books[slot] = null;
+        live.clear(slot);
+        byGenre.get(book.getGenre()).clear(slot);
+        BitSet year = byYear.get(book.getYear());
+        year.clear(slot);
+        if (year.isEmpty()) {
+            byYear.remove(book.getYear());
+        }
+        setBit(available, slot, false);
+        freeSlots.push(slot);
+    }
+
+    // Call after the book's availability changed. Copies are lent and returned
+    // without a per-title lock, so the bit is rewritten until it matches the
+    // availability read after the write; the last writer then always agrees
+    // with the final state.
+    public void availabilityChanged(BookItem book) {
+        Integer slot = slots.get(book);
+        if (slot == null) {
+            return;
+        }
+        boolean value;
+        do {
+            value = book.isAvailable();
+            setBit(available, slot, value);
+        } while (book.isAvailable() != value);
+    }
+
+    public int count(FacetQuery query) {
+        return evaluate(query).cardinality();
+    }
+
+    public Map<Genre, Integer> countByGenre(FacetQuery query) {
+        BitSet matches = evaluate(query);
+        Map<Genre, Integer> counts = new EnumMap<>(Genre.class);
+        for (Map.Entry<Genre, BitSet> entry : byGenre.entrySet()) {
+            BitSet inGenre = (BitSet) matches.clone();
+            inGenre.and(entry.getValue());
+            counts.put(entry.getKey(), inGenre.cardinality());
+        }
+        return counts;
+    }
+
+    public List<BookItem> find(FacetQuery query, int limit) {
+        BitSet matches = evaluate(query);
+        List<BookItem> result = new ArrayList<>(Math.min(limit, matches.cardinality()));
+        for (int slot = matches.nextSetBit(0); slot >= 0 && result.size() < limit; slot = matches.nextSetBit(slot + 1)) {
+            result.add(books[slot]);
+        }
+        return result;
+    }
+
+    private BitSet evaluate(FacetQuery query) {
+        return evaluate(query, live);
+    }
+
+    // candidates bounds the books a Matches term is allowed to look at
+    private BitSet evaluate(FacetQuery query, BitSet candidates) {
+        return switch (query) {
+            case FacetQuery.GenreIs g -> (BitSet) byGenre.get(g.genre()).clone();
+            case FacetQuery.YearBetween y -> years(y.from(), y.to());
+            case FacetQuery.Available a -> availableBits();
+            case FacetQuery.And and -> {
+                BitSet result = (BitSet) candidates.clone();
+                // indexed terms first, so predicates see the fewest candidates
+                List<FacetQuery> ordered = new ArrayList<>(and.terms());
+                ordered.sort(Comparator.comparing(term -> !term.isIndexed()));
+                for (FacetQuery term : ordered) {
+                    if (result.isEmpty()) {
+                        break;
+                    }
+                    result.and(evaluate(term, result));
+                }
+                yield result;
+            }
+            case FacetQuery.Or or -> {
+                BitSet result = new BitSet();
+                for (FacetQuery term : or.terms()) {
+                    result.or(evaluate(term, candidates));
+                }
+                yield result;
+            }
+            case FacetQuery.Not not -> {
+                BitSet result = (BitSet) candidates.clone();
+                result.andNot(evaluate(not.term(), candidates));
+                yield result;
+            }
+            case FacetQuery.Matches m -> {
+                BitSet result = new BitSet();
+                for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                    if (books[slot] != null && m.predicate().test(books[slot])) {
+                        result.set(slot);
+                    }
+                }
+                yield result;
+            }
+        };
+    }
+
+    private BitSet years(int from, int to) {
+        BitSet result = new BitSet();
+        if (from <= to) {
+            byYear.subMap(from, true, to, true).values().forEach(result::or);
+        }
+        return result;
+    }
+
+    private BitSet availableBits() {
+        AtomicLongArray bits = available;
+        long[] words = new long[bits.length()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = bits.get(i);
+        }
+        BitSet result = BitSet.valueOf(words);
+        result.and(live);
+        return result;
+    }
+
+    // only called with the catalog write lock held, so no flips are in flight
+    private void ensureAvailabilityCapacity(int slot) {
+        AtomicLongArray bits = available;
+        int words = (slot >>> 6) + 1;
+        if (words <= bits.length()) {
+            return;
+        }
+        AtomicLongArray grown = new AtomicLongArray(Math.max(words, bits.length() * 2));
+        for (int i = 0; i < bits.length(); i++) {
+            grown.set(i, bits.get(i));
+        }
+        available = grown;
+    }
+
+    private static void setBit(AtomicLongArray bits, int slot, boolean value) {
+        long mask = 1L << slot;
+        if (value) {
+            bits.getAndAccumulate(slot >>> 6, mask, (word, m) -> word | m);
+        } else {
+            bits.getAndAccumulate(slot >>> 6, mask, (word, m) -> word & ~m);
+        }
+    }
+}
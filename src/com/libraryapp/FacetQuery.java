@@ -0,0 +1,85 @@
+package com.libraryapp;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+// Structured book filter. Genre, year and availability terms are answered
+// from FacetIndex bitmaps; Matches is the fallback for anything else and is
+// only evaluated on books the indexed terms have not already ruled out.
+public sealed interface FacetQuery {
+
+    record GenreIs(Genre genre) implements FacetQuery {
+        public GenreIs {
+            Objects.requireNonNull(genre);
+        }
+    }
+
+    record YearBetween(int from, int to) implements FacetQuery {
+    }
+
+    record Available() implements FacetQuery {
+    }
+
+    record And(List<FacetQuery> terms) implements FacetQuery {
+        public And {
+            terms = List.copyOf(terms);
+        }
+    }
+
+    record Or(List<FacetQuery> terms) implements FacetQuery {
+        public Or {
+            terms = List.copyOf(terms);
+        }
+    }
+
+    record Not(FacetQuery term) implements FacetQuery {
+        public Not {
+            Objects.requireNonNull(term);
+        }
+    }
+
+    record Matches(Predicate<? super BookItem> predicate) implements FacetQuery {
+        public Matches {
+            Objects.requireNonNull(predicate);
+        }
+    }
+
+    static FacetQuery genre(Genre genre) {
+        return new GenreIs(genre);
+    }
+
+    static FacetQuery years(int from, int to) {
+        return new YearBetween(from, to);
+    }
+
+    static FacetQuery available() {
+        return new Available();
+    }
+
+    static FacetQuery and(FacetQuery... terms) {
+        return new And(List.of(terms));
+    }
+
+    static FacetQuery or(FacetQuery... terms) {
+        return new Or(List.of(terms));
+    }
+
+    static FacetQuery not(FacetQuery term) {
+        return new Not(term);
+    }
+
+    static FacetQuery matching(Predicate<? super BookItem> predicate) {
+        return new Matches(predicate);
+    }
+
+    default boolean isIndexed() {
+        return switch (this) {
+            case Matches m -> false;
+            case And a -> a.terms().stream().allMatch(FacetQuery::isIndexed);
+            case Or o -> o.terms().stream().allMatch(FacetQuery::isIndexed);
+            case Not n -> n.term().isIndexed();
+            default -> true;
+        };
+    }
+}
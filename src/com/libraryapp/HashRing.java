@@ -0,0 +1,81 @@
+package com.libraryapp;
+
+import java.util.Arrays;
+
+// Consistent hash ring: every shard owns the same number of virtual nodes,
+// and a key belongs to the first node at or after its hash. Node positions
+// depend only on (shard, node), so adding a shard only moves the keys that
+// land on the new shard's nodes.
+public final class HashRing {
+
+    private final int shards;
+    private final int virtualNodes;
+    private final long[] points;
+    private final int[] owners;
+
+    public HashRing(int shards, int virtualNodes) {
+        if (shards <= 0 || virtualNodes <= 0) {
+            throw new IllegalArgumentException("Shard and virtual node counts must be positive.");
+        }
+        this.shards = shards;
+        this.virtualNodes = virtualNodes;
+        long[] nodes = new long[shards * virtualNodes];
+        for (int shard = 0; shard < shards; shard++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                // low bits carry the owner while sorting; positions are only
+                // compared on the high bits
+                long position = mix(((long) shard << 32) | v) & ~0xFFFFL;
+                nodes[shard * virtualNodes + v] = position | shard;
+            }
+        }
+        Arrays.sort(nodes);
+        this.points = new long[nodes.length];
+        this.owners = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            points[i] = nodes[i] & ~0xFFFFL;
+            owners[i] = (int) (nodes[i] & 0xFFFF);
+        }
+    }
+
+    public HashRing withShard() {
+        return new HashRing(shards + 1, virtualNodes);
+    }
+
+    public int shardCount() {
+        return shards;
+    }
+
+    public int shardFor(Isbn isbn) {
+        return ownerOf(mix(isbn.toLong()));
+    }
+
+    public int shardFor(String id) {
+        long h = 0xCBF29CE484222325L; // FNV-1a
+        for (int i = 0; i < id.length(); i++) {
+            h = (h ^ id.charAt(i)) * 0x100000001B3L;
+        }
+        return ownerOf(mix(h));
+    }
+
+    private int ownerOf(long hash) {
+        long position = hash & ~0xFFFFL;
+        int lo = 0;
+        int hi = points.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (points[mid] < position) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return owners[lo == points.length ? 0 : lo];
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
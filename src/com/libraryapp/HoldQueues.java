@@ -0,0 +1,170 @@
+package com.libraryapp;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Bounded FIFO hold queues per ISBN plus the reservations (one per set-aside
+// copy) waiting to be picked up. The maps are concurrent so different ISBNs
+// never contend, and hasWaiting/hasReservations may be read without a lock,
+// but every change for one ISBN must run under that ISBN's lock in Library.
+public final class HoldQueues {
+
+    private final int capacity;
+    private final int pickupDays;
+    private final Map<Isbn, Deque<String>> waiting = new ConcurrentHashMap<>();
+    private final Map<Isbn, Map<String, Reservation>> ready = new ConcurrentHashMap<>();
+
+    public HoldQueues(int capacity, int pickupDays) {
+        if (capacity <= 0 || pickupDays < 0) {
+            throw new IllegalArgumentException("Invalid hold queue settings.");
+        }
+        this.capacity = capacity;
+        this.pickupDays = pickupDays;
+    }
+
+    public HoldStatus enqueue(Isbn isbn, String memberId) {
+        if (reservation(isbn, memberId) != null) {
+            return HoldStatus.ALREADY_HOLDING;
+        }
+        Deque<String> queue = waiting.computeIfAbsent(isbn, k -> new ArrayDeque<>());
+        if (queue.contains(memberId)) {
+            return HoldStatus.ALREADY_HOLDING;
+        }
+        if (queue.size() >= capacity) {
+            return HoldStatus.QUEUE_FULL;
+        }
+        queue.addLast(memberId);
+        return HoldStatus.QUEUED;
+    }
+
+    // removes a waiting hold; returns false if the member was not queued
+    public boolean dequeue(Isbn isbn, String memberId) {
+        Deque<String> queue = waiting.get(isbn);
+        if (queue == null || !queue.remove(memberId)) {
+            return false;
+        }
+        if (queue.isEmpty()) {
+            waiting.remove(isbn);
+        }
+        return true;
+    }
+
+    // 1-based place in the queue, or 0 if the member is not waiting
+    public int position(Isbn isbn, String memberId) {
+        Deque<String> queue = waiting.get(isbn);
+        if (queue == null) {
+            return 0;
+        }
+        int position = 1;
+        for (String waiter : queue) {
+            if (waiter.equals(memberId)) {
+                return position;
+            }
+            position++;
+        }
+        return 0;
+    }
+
+    // waiting members in queue order
+    public List<String> queue(Isbn isbn) {
+        Deque<String> queue = waiting.get(isbn);
+        return queue == null ? List.of() : List.copyOf(queue);
+    }
+
+    public int waitingCount(Isbn isbn) {
+        Deque<String> queue = waiting.get(isbn);
+        return queue == null ? 0 : queue.size();
+    }
+
+    public boolean hasWaiting(Isbn isbn) {
+        return waiting.containsKey(isbn);
+    }
+
+    public boolean hasReservations(Isbn isbn) {
+        return ready.containsKey(isbn);
+    }
+
+    public Reservation reservation(Isbn isbn, String memberId) {
+        Map<String, Reservation> reserved = ready.get(isbn);
+        return reserved == null ? null : reserved.get(memberId);
+    }
+
+    public List<Reservation> reservations(Isbn isbn) {
+        Map<String, Reservation> reserved = ready.get(isbn);
+        return reserved == null ? List.of() : List.copyOf(reserved.values());
+    }
+
+    // sets the copy aside for the next waiting member, or returns null when
+    // nobody is waiting
+    public Reservation promote(Isbn isbn, int copyNumber, LocalDate on) {
+        Deque<String> queue = waiting.get(isbn);
+        if (queue == null) {
+            return null;
+        }
+        String next = queue.pollFirst();
+        if (queue.isEmpty()) {
+            waiting.remove(isbn);
+        }
+        Reservation reservation = new Reservation(isbn, next, copyNumber, on, on.plusDays(pickupDays));
+        ready.computeIfAbsent(isbn, k -> new ConcurrentHashMap<>(2)).put(next, reservation);
+        return reservation;
+    }
+
+    public Reservation release(Isbn isbn, String memberId) {
+        Map<String, Reservation> reserved = ready.get(isbn);
+        if (reserved == null) {
+            return null;
+        }
+        Reservation released = reserved.remove(memberId);
+        if (reserved.isEmpty()) {
+            ready.remove(isbn);
+        }
+        return released;
+    }
+
+    public List<Reservation> expiredAsOf(LocalDate on) {
+        List<Reservation> expired = new ArrayList<>();
+        for (Map<String, Reservation> reserved : ready.values()) {
+            for (Reservation reservation : reserved.values()) {
+                if (reservation.isExpired(on)) {
+                    expired.add(reservation);
+                }
+            }
+        }
+        return expired;
+    }
+
+    public void forget(Isbn isbn) {
+        waiting.remove(isbn);
+        ready.remove(isbn);
+    }
+
+    // waiting members per ISBN in queue order, for snapshots
+    public Map<Isbn, List<String>> queues() {
+        Map<Isbn, List<String>> queues = new LinkedHashMap<>();
+        waiting.forEach((isbn, queue) -> queues.put(isbn, List.copyOf(queue)));
+        return queues;
+    }
+
+    public List<Reservation> allReservations() {
+        List<Reservation> all = new ArrayList<>();
+        for (Map<String, Reservation> reserved : ready.values()) {
+            all.addAll(reserved.values());
+        }
+        return all;
+    }
+
+    // puts back a reservation from a snapshot or the log, taking the member
+    // out of the queue it was promoted from
+    public void restore(Reservation reservation) {
+        dequeue(reservation.isbn(), reservation.memberId());
+        ready.computeIfAbsent(reservation.isbn(), k -> new ConcurrentHashMap<>(2))
+                .put(reservation.memberId(), reservation);
+    }
+}
@@ -0,0 +1,12 @@
+package com.libraryapp;
+
+public enum HoldStatus {
+    QUEUED,
+    // the book is on the shelf; borrow it instead
+    AVAILABLE,
+    ALREADY_HOLDING,
+    QUEUE_FULL,
+    UNKNOWN_MEMBER,
+    NOT_A_MEMBER,
+    UNKNOWN_BOOK
+}
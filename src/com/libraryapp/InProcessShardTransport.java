@@ -0,0 +1,66 @@
+package com.libraryapp;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+// Shards as Library instances in this JVM. Fan-out calls run on virtual
+// threads; single-shard invocations run on the caller's thread.
+public final class InProcessShardTransport implements ShardTransport {
+
+    private final Supplier<Library> shardFactory;
+    private final List<Library> shards = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public InProcessShardTransport(int shardCount, Supplier<Library> shardFactory) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive.");
+        }
+        this.shardFactory = Objects.requireNonNull(shardFactory);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(shardFactory.get());
+        }
+    }
+
+    public Library shard(int index) {
+        return shards.get(index);
+    }
+
+    @Override
+    public int shardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public <T> CompletableFuture<T> call(int shard, Request<T> request) {
+        Library library = shards.get(shard);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return request.apply(library);
+            } catch (LibraryException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public <T> T invoke(int shard, Request<T> request) throws LibraryException {
+        return request.apply(shards.get(shard));
+    }
+
+    @Override
+    public synchronized int addShard() {
+        shards.add(shardFactory.get());
+        return shards.size() - 1;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -4,19 +4,156 @@ import java.util.Objects;
 
 public final class Isbn {
 
-    private final String value;
+    private static final long ISBN13_LIMIT = 10_000_000_000_000L;
+
+    // small lock-free intern cache: one slot per hash bucket, last writer wins
+    private static final int CACHE_SIZE = 4096;
+    private static final Isbn[] CACHE = new Isbn[CACHE_SIZE];
+
+    // every ISBN is kept as its 13-digit number, so ISBN-10 and ISBN-13
+    // forms of the same book are equal
+    private final long code;
+    private String value; // canonical text, created on first use
 
     public Isbn(String value) {
         Objects.requireNonNull(value);
-        String normalized = value.replace("-", "").trim();
-        if (normalized.length() != 10 && normalized.length() != 13) {
-            throw new IllegalArgumentException("ISBN must be 10 or 13 characters.");
+        this.code = parse(value);
+        if (value.length() == 13 && isDigits(value)) {
+            this.value = value; // already canonical, keep the caller's string
+        }
+    }
+
+    private Isbn(long code) {
+        this.code = code;
+    }
+
+    public static Isbn of(long code) {
+        if (code < 0 || code >= ISBN13_LIMIT || !validIsbn13(code)) {
+            throw new IllegalArgumentException("Invalid ISBN-13 number: " + code);
+        }
+        return new Isbn(code);
+    }
+
+    // shares one instance per ISBN while it stays in the cache
+    public static Isbn interned(String value) {
+        Objects.requireNonNull(value);
+        long code = parse(value);
+        int slot = (int) ((code ^ (code >>> 29)) * 0x9E3779B97F4A7C15L >>> 52) & (CACHE_SIZE - 1);
+        Isbn cached = CACHE[slot];
+        if (cached != null && cached.code == code) {
+            return cached;
+        }
+        Isbn created = new Isbn(code);
+        CACHE[slot] = created;
+        return created;
+    }
+
+    public static boolean isValid(String value) {
+        try {
+            parse(value);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
         }
-        this.value = normalized;
     }
 
     public String value() {
-        return value;
+        String text = value;
+        if (text == null) {
+            text = format(code);
+            value = text; // benign race: every thread computes the same string
+        }
+        return text;
+    }
+
+    public long toLong() {
+        return code;
+    }
+
+    // accepts ISBN-10 or ISBN-13 with optional hyphens and surrounding spaces
+    private static long parse(String value) {
+        int start = 0;
+        int end = value.length();
+        while (start < end && Character.isWhitespace(value.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(value.charAt(end - 1))) {
+            end--;
+        }
+        long digits = 0;
+        int count = 0;
+        int isbn10Sum = 0;
+        boolean checkX = false;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            int d;
+            if (c >= '0' && c <= '9') {
+                d = c - '0';
+            } else if ((c == 'X' || c == 'x') && count == 9) {
+                d = 10;
+                checkX = true;
+            } else {
+                throw new IllegalArgumentException("ISBN contains invalid characters.");
+            }
+            if (count == 13 || (checkX && d != 10)) {
+                throw new IllegalArgumentException("ISBN must be 10 or 13 characters.");
+            }
+            count++;
+            isbn10Sum += d * (11 - count);
+            if (d < 10) {
+                digits = digits * 10 + d;
+            }
+        }
+        if (count == 13) {
+            if (!validIsbn13(digits)) {
+                throw new IllegalArgumentException("Invalid ISBN-13 checksum.");
+            }
+            return digits;
+        }
+        if (count == 10) {
+            if (isbn10Sum % 11 != 0) {
+                throw new IllegalArgumentException("Invalid ISBN-10 checksum.");
+            }
+            long body = 978_000_000_000L + (checkX ? digits : digits / 10);
+            return body * 10 + isbn13CheckDigit(body);
+        }
+        throw new IllegalArgumentException("ISBN must be 10 or 13 characters.");
+    }
+
+    private static boolean validIsbn13(long code) {
+        return code % 10 == isbn13CheckDigit(code / 10);
+    }
+
+    private static int isbn13CheckDigit(long first12) {
+        int sum = 0;
+        // weights alternate 3,1 from the rightmost of the 12 digits
+        for (int i = 0; i < 12; i++) {
+            sum += (int) (first12 % 10) * (i % 2 == 0 ? 3 : 1);
+            first12 /= 10;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    private static boolean isDigits(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String format(long code) {
+        char[] chars = new char[13];
+        for (int i = 12; i >= 0; i--) {
+            chars[i] = (char) ('0' + code % 10);
+            code /= 10;
+        }
+        return new String(chars);
     }
 
     @Override
@@ -25,16 +162,16 @@ public final class Isbn {
             return true;
         if (!(o instanceof Isbn other))
             return false;
-        return value.equals(other.value);
+        return code == other.code;
     }
 
     @Override
     public int hashCode() {
-        return value.hashCode();
+        return Long.hashCode(code * 0x9E3779B97F4A7C15L);
     }
 
     @Override
     public String toString() {
-        return value;
+        return value();
     }
 }
@@ -1,94 +1,877 @@
 package com.libraryapp;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Library {
 
-    private final List<LibraryItem> items;
-    private final List<LoanRecord> loans;
-    private final List<LibraryUser> users;
+    // primary-key indexes, plus the items sorted by id for listings and cursors;
+    // itemOrder is persistent and only replaced under the catalog write lock
+    private final Map<String, LibraryItem> items = new HashMap<>();
+    private PersistentSortedMap<String, LibraryItem> itemOrder = PersistentSortedMap.empty();
+    private final Map<Isbn, BookItem> booksByIsbn = new HashMap<>();
+    private final Map<String, LibraryUser> users = new LinkedHashMap<>();
+    private final TextIndex textIndex = new TextIndex();
+    private final AutocompleteIndex autocomplete = new AutocompleteIndex();
+    private final FacetIndex facets = new FacetIndex();
+    private final LoanStore loans;
+    private final LoanArchive history = new LoanArchive();
+    private final HoldQueues holds = new HoldQueues(HOLD_QUEUE_CAPACITY, PICKUP_DAYS);
+
+    // catalog structure (items, users) is guarded by the read/write lock;
+    // borrow and return only take the read side plus the lock for their ISBN
+    private final ReadWriteLock catalogLock = new ReentrantReadWriteLock();
+    private final LockStripes isbnLocks = new LockStripes(256);
+
+    // every structural change publishes the new item map as a version, and
+    // books stamp their copy counts on the same clock (see CatalogSnapshot)
+    private final VersionClock clock = new VersionClock();
+    private volatile VersionClock.Version<PersistentSortedMap<String, LibraryItem>> publishedItems =
+            VersionClock.Version.initial(PersistentSortedMap.empty());
+
+    private final List<LibraryListener> listeners = new CopyOnWriteArrayList<>();
+    private final ConsoleRenderer console = new ConsoleRenderer();
+    private volatile LibraryMetrics metrics = LibraryMetrics.disabled();
+
+    private static final int STREAM_PAGE_SIZE = 1024;
+    private static final int HOLD_QUEUE_CAPACITY = 32;
+    private static final int PICKUP_DAYS = 3;
+    private static final LocalDate FIRST_DAY = LocalDate.of(1, 1, 1);
+    private static final LocalDate LAST_DAY = LocalDate.of(9999, 12, 31);
 
     public Library(List<LibraryItem> items,
             List<LoanRecord> loans,
             List<LibraryUser> users) {
 
-        this.items = new ArrayList<>(Objects.requireNonNull(items));
-        this.loans = new ArrayList<>(Objects.requireNonNull(loans));
-        this.users = new ArrayList<>(Objects.requireNonNull(users));
+        Objects.requireNonNull(items).forEach(this::indexItem);
+        Objects.requireNonNull(users).forEach(this::indexUser);
+        this.loans = new LoanStore(loans);
+        for (LoanRecord record : loans) {
+            BookItem book = booksByIsbn.get(record.isbn());
+            if (book != null) {
+                book.markCopy(record.copyNumber(), true);
+                facets.availabilityChanged(book);
+            }
+            autocomplete.borrowed(record.isbn(), record.memberId());
+        }
     }
 
     public void addItems(LibraryItem... newItems) {
-        for (LibraryItem item : newItems) {
-            this.items.add(item);
-        }
+        timed(LibraryMetrics.Operation.ADD_ITEMS, () -> {
+            catalogLock.writeLock().lock();
+            try {
+                for (LibraryItem item : newItems) {
+                    indexItem(item);
+                    if (item instanceof BookItem book) {
+                        listeners.forEach(l -> l.onBookAdded(book));
+                    }
+                }
+            } finally {
+                catalogLock.writeLock().unlock();
+            }
+        });
     }
 
     public void addUser(LibraryUser user) {
-        this.users.add(user);
+        timed(LibraryMetrics.Operation.ADD_USER, () -> {
+            catalogLock.writeLock().lock();
+            try {
+                indexUser(user);
+                listeners.forEach(l -> l.onUserAdded(user));
+            } finally {
+                catalogLock.writeLock().unlock();
+            }
+        });
+    }
+
+    private void indexItem(LibraryItem item) {
+        Objects.requireNonNull(item);
+        LibraryItem previous = items.put(item.getId(), item);
+        itemOrder = itemOrder.plus(item.getId(), item);
+        if (previous instanceof BookItem old) {
+            unindexBook(old);
+        }
+        if (item instanceof BookItem book) {
+            book.bind(clock);
+            booksByIsbn.put(book.getIsbn(), book);
+            textIndex.add(book);
+            facets.add(book);
+            autocomplete.addBook(book);
+        }
+        publishItems();
+    }
+
+    private void unindexItem(BookItem book) {
+        unindexBook(book);
+        autocomplete.removeBook(book.getIsbn());
+        items.remove(book.getId());
+        itemOrder = itemOrder.minus(book.getId());
+        publishItems();
+    }
+
+    // the caller holds the catalog write lock, so this is the only writer
+    private void publishItems() {
+        long e = clock.enter();
+        try {
+            publishedItems = clock.push(publishedItems, itemOrder, e);
+        } finally {
+            clock.exit(e);
+        }
+    }
+
+    private void unindexBook(BookItem book) {
+        booksByIsbn.remove(book.getIsbn());
+        textIndex.remove(book);
+        facets.remove(book);
+    }
+
+    private void indexUser(LibraryUser user) {
+        Objects.requireNonNull(user);
+        users.put(user.getId(), user);
+        autocomplete.addUser(user);
+    }
+
+    // one page of items in id order whose entries match the filter
+    public Page<LibraryItem> queryItems(Predicate<? super LibraryItem> filter, String pageToken, int pageSize) {
+        return timed(LibraryMetrics.Operation.QUERY_ITEMS, () -> {
+            if (pageSize <= 0) {
+                throw new IllegalArgumentException("Page size must be positive");
+            }
+            // the published map is immutable, so no lock is needed
+            Iterator<LibraryItem> remaining = publishedItems.value
+                    .iteratorAfter(pageToken == null ? null : decodeToken(pageToken));
+            List<LibraryItem> page = new ArrayList<>(Math.min(pageSize, 256));
+            while (remaining.hasNext()) {
+                LibraryItem item = remaining.next();
+                if (filter.test(item)) {
+                    page.add(item);
+                    if (page.size() == pageSize) {
+                        return new Page<>(page, remaining.hasNext() ? encodeToken(item.getId()) : null);
+                    }
+                }
+            }
+            return new Page<>(page, null);
+        });
+    }
+
+    public Page<LibraryItem> listItems(String pageToken, int pageSize) {
+        return queryItems(item -> true, pageToken, pageSize);
+    }
+
+    // the items as of the call, in id order; availability is read live, use
+    // snapshot() for counts from the same point in time
+    public Stream<LibraryItem> streamItems(Predicate<? super LibraryItem> filter) {
+        Objects.requireNonNull(filter);
+        return publishedItems.value.values().filter(filter);
+    }
+
+    // O(1); see CatalogSnapshot. Callers must close it.
+    public CatalogSnapshot snapshot() {
+        long version = clock.openSnapshot();
+        return new CatalogSnapshot(clock, version, publishedItems.at(version));
+    }
+
+    public Page<LoanRecord> listLoans(String pageToken, int pageSize) {
+        return timed(LibraryMetrics.Operation.LIST_LOANS, () -> {
+            if (pageSize <= 0) {
+                throw new IllegalArgumentException("Page size must be positive");
+            }
+            int after = pageToken == null ? Integer.MIN_VALUE : Integer.parseInt(decodeToken(pageToken));
+            List<LoanRecord> page = loans.page(after, pageSize + 1);
+            if (page.size() <= pageSize) {
+                return new Page<>(page, null);
+            }
+            page = page.subList(0, pageSize);
+            return new Page<>(page, encodeToken(Integer.toString(page.get(pageSize - 1).loanId())));
+        });
+    }
+
+    public Stream<LoanRecord> streamLoans() {
+        return pagedStream(token -> listLoans(token, STREAM_PAGE_SIZE));
     }
 
+    private static <T> Stream<T> pagedStream(Function<String, Page<T>> fetch) {
+        Iterator<T> iterator = new Iterator<>() {
+            private Iterator<T> current = null;
+            private String token = null;
+            private boolean lastPage = false;
+
+            @Override
+            public boolean hasNext() {
+                while (current == null || !current.hasNext()) {
+                    if (lastPage) {
+                        return false;
+                    }
+                    Page<T> page = fetch.apply(token);
+                    current = page.items().iterator();
+                    token = page.nextPageToken();
+                    lastPage = !page.hasNext();
+                }
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private static String encodeToken(String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeToken(String token) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed page token", e);
+        }
+    }
+
+    // listings render one snapshot, so concurrent changes never tear them
     public void printAllItems() {
-        items.forEach(item -> System.out.println(formatItem(item)));
+        try (CatalogSnapshot snapshot = snapshot()) {
+            console.renderItems(snapshot, snapshot.items());
+        }
     }
 
     public void printMatchingItems(Predicate<LibraryItem> predicate) {
-        items.stream()
-                .filter(predicate)
-                .map(this::formatItem) // method reference to instance method
-                .forEach(System.out::println);
+        try (CatalogSnapshot snapshot = snapshot()) {
+            console.renderItems(snapshot, snapshot.items().filter(predicate));
+        }
+    }
+
+    // title/author substring search served from the inverted index
+    public List<BookItem> searchBooks(String query) {
+        return timed(LibraryMetrics.Operation.SEARCH_BOOKS, () -> {
+            catalogLock.readLock().lock();
+            try {
+                return textIndex.search(query);
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
+    }
+
+    public void printSearchResults(String query) {
+        console.renderItems(searchBooks(query).stream());
+    }
+
+    // typo-tolerant title/author search, best match first, at most limit hits
+    public List<SearchHit> fuzzySearchBooks(String query, int limit) {
+        return timed(LibraryMetrics.Operation.FUZZY_SEARCH_BOOKS, () -> {
+            catalogLock.readLock().lock();
+            try {
+                return textIndex.searchFuzzy(query, limit);
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
+    }
+
+    public void printFuzzySearchResults(String query, int limit) {
+        console.renderItems(fuzzySearchBooks(query, limit).stream().map(SearchHit::book));
+    }
+
+    // type-ahead over titles, authors, member ids and names: completions of the
+    // prefix at any word start, the most borrowed books and members first
+    public List<Suggestion> suggest(String prefix, int limit) {
+        return timed(LibraryMetrics.Operation.SUGGEST, () -> {
+            catalogLock.readLock().lock();
+            try {
+                return autocomplete.complete(prefix, limit);
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
+    }
+
+    // structured filters answered from the genre/year/availability bitmaps
+    public int countBooks(FacetQuery query) {
+        return timed(LibraryMetrics.Operation.COUNT_BOOKS, () -> {
+            catalogLock.readLock().lock();
+            try {
+                return facets.count(query);
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
+    }
+
+    public Map<Genre, Integer> countBooksByGenre(FacetQuery query) {
+        return timed(LibraryMetrics.Operation.COUNT_BOOKS_BY_GENRE, () -> {
+            catalogLock.readLock().lock();
+            try {
+                return facets.countByGenre(query);
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
     }
 
-    public void borrowBook(String memberId, Isbn isbn, LocalDate borrowDate)
+    public List<BookItem> findBooks(FacetQuery query, int limit) {
+        return timed(LibraryMetrics.Operation.FIND_BOOKS, () -> {
+            catalogLock.readLock().lock();
+            try {
+                return facets.find(query, limit);
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
+    }
+
+    public LoanRecord borrowBook(String memberId, Isbn isbn, LocalDate borrowDate)
             throws LibraryException {
+        return timed(LibraryMetrics.Operation.BORROW_BOOK, () -> {
+            return switch (borrow(memberId, isbn, borrowDate)) {
+                case LoanRecord record -> record;
+                case LoanStatus status -> throw toException(status, memberId, isbn);
+            };
+        });
+    }
+
+    public void returnBook(String memberId, Isbn isbn, LocalDate returnDate)
+            throws LibraryException {
+        timed(LibraryMetrics.Operation.RETURN_BOOK, () -> {
+            LoanOutcome outcome = giveBack(memberId, isbn, returnDate);
+            if (outcome instanceof LoanStatus status) {
+                throw toException(status, memberId, isbn);
+            }
+            if (Borrowable.isOverdue(((LoanRecord) outcome).dueDate(), returnDate)) {
+                System.out.println("Warning: this book is overdue!");
+            }
+        });
+    }
+
+    // Non-throwing borrow: the new LoanRecord, or the LoanStatus saying why the
+    // book was not lent. Misses and taken books allocate nothing.
+    public LoanOutcome tryBorrow(String memberId, Isbn isbn, LocalDate borrowDate) {
+        return timed(LibraryMetrics.Operation.TRY_BORROW_BOOK, Library::borrow, memberId, isbn, borrowDate);
+    }
+
+    // Non-throwing return: the closed LoanRecord, or why nothing was returned.
+    public LoanOutcome tryReturn(String memberId, Isbn isbn, LocalDate returnDate) {
+        return timed(LibraryMetrics.Operation.TRY_RETURN_BOOK, Library::giveBack, memberId, isbn, returnDate);
+    }
+
+    private LoanOutcome borrow(String memberId, Isbn isbn, LocalDate borrowDate) {
+        catalogLock.readLock().lock();
+        try {
+            LibraryUser user = users.get(memberId);
+            if (user == null) {
+                return LoanStatus.UNKNOWN_MEMBER;
+            }
+            if (!(user instanceof AbstractMember)) {
+                return LoanStatus.NOT_A_MEMBER;
+            }
+            BookItem book = booksByIsbn.get(isbn);
+            if (book == null) {
+                return LoanStatus.UNKNOWN_BOOK;
+            }
+            if (loans.find(memberId, isbn) != null) {
+                return LoanStatus.ALREADY_BORROWED;
+            }
 
-        LibraryUser user = findUserById(memberId);
-        LibraryItem item = findItemByIsbn(isbn);
+            if (!holds.hasWaiting(isbn) && !holds.hasReservations(isbn)) {
+                // nobody is queued, so any free copy can be taken with one CAS;
+                // the ISBN lock is only held while lend() opens the loan
+                int copy = book.claimCopy();
+                if (copy == 0) {
+                    return LoanStatus.NOT_AVAILABLE;
+                }
+                LoanOutcome outcome = lend(book, memberId, copy, borrowDate);
+                if (!outcome.succeeded()) {
+                    restock(book, copy, borrowDate);
+                }
+                return outcome;
+            }
 
-        if (!(item instanceof BookItem book)) {
-            throw new LibraryException("Only books can be borrowed with this operation.");
+            Lock lock = isbnLocks.lockFor(isbn);
+            lock.lock();
+            try {
+                int copy = takeCopy(book, memberId, borrowDate);
+                if (copy == 0) {
+                    return holds.hasReservations(isbn) ? LoanStatus.RESERVED : LoanStatus.NOT_AVAILABLE;
+                }
+                boolean reserved = holds.reservation(isbn, memberId) != null;
+                LoanOutcome outcome = lend(book, memberId, copy, borrowDate);
+                if (outcome.succeeded() && reserved) {
+                    holds.release(isbn, memberId);
+                } else if (!outcome.succeeded() && !reserved) {
+                    restock(book, copy, borrowDate);
+                }
+                return outcome;
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            catalogLock.readLock().unlock();
         }
+    }
 
-        if (!book.isAvailable()) {
-            throw new BookNotAvailableException("Book is already borrowed.");
+    private LoanOutcome giveBack(String memberId, Isbn isbn, LocalDate returnDate) {
+        catalogLock.readLock().lock();
+        try {
+            // a book with an active loan cannot be removed, so no book means no loan
+            BookItem book = booksByIsbn.get(isbn);
+            if (book == null) {
+                return LoanStatus.NO_ACTIVE_LOAN;
+            }
+            LoanRecord record;
+            // under the ISBN lock, like lend(), so a return is never announced
+            // before the borrow it closes
+            Lock lock = isbnLocks.lockFor(isbn);
+            lock.lock();
+            try {
+                record = loans.close(memberId, isbn);
+                if (record == null) {
+                    return LoanStatus.NO_ACTIVE_LOAN;
+                }
+                history.archive(record, returnDate);
+                // listeners hear about the return before the copy can be lent
+                // again, so events for one copy are always seen in order
+                for (LibraryListener listener : listeners) {
+                    listener.onReturned(record, returnDate);
+                }
+            } finally {
+                lock.unlock();
+            }
+            restock(book, record.copyNumber(), returnDate);
+            return record;
+        } finally {
+            catalogLock.readLock().unlock();
         }
+    }
 
-        if (user instanceof AbstractMember member) {
-            int loanId = loans.size() + 1;
+    // Opens the loan for a copy the caller has already taken. The loan becomes
+    // visible and is announced under the ISBN lock, which giveBack() also
+    // holds, so a concurrent return cannot close it before onBorrowed runs.
+    private LoanOutcome lend(BookItem book, String memberId, int copy, LocalDate borrowDate) {
+        LoanRecord record = newLoan(book, memberId, copy, borrowDate);
+        Lock lock = isbnLocks.lockFor(book.getIsbn());
+        lock.lock();
+        try {
+            if (!loans.open(record)) {
+                return LoanStatus.ALREADY_BORROWED;
+            }
+            announceLoan(book, record);
+        } finally {
+            lock.unlock();
+        }
+        return record;
+    }
 
-            LocalDate dueDate = book.calculateDueDate(borrowDate);
+    private LoanRecord newLoan(BookItem book, String memberId, int copy, LocalDate borrowDate) {
+        return new LoanRecord(loans.nextLoanId(), book.getIsbn(), memberId,
+                borrowDate, book.calculateDueDate(borrowDate), copy);
+    }
 
-            LoanRecord record = new LoanRecord(loanId, isbn, memberId, borrowDate, dueDate);
-            loans.add(record);
+    // indexes and listeners hear of a loan once it is open
+    private void announceLoan(BookItem book, LoanRecord record) {
+        facets.availabilityChanged(book);
+        autocomplete.borrowed(book.getIsbn(), record.memberId());
+        for (LibraryListener listener : listeners) {
+            listener.onBorrowed(record);
+        }
+    }
 
-            book.setAvailable(false);
-        } else {
-            throw new LibraryException("Only members can borrow books.");
+    // Under the ISBN lock: the member's reserved copy, else any free copy, else
+    // 0. Reservations past their pickup date are passed on first.
+    private int takeCopy(BookItem book, String memberId, LocalDate on) {
+        for (Reservation reservation : holds.reservations(book.getIsbn())) {
+            if (reservation.isExpired(on)) {
+                passOn(book, reservation, on);
+            }
         }
+        Reservation mine = holds.reservation(book.getIsbn(), memberId);
+        return mine != null ? mine.copyNumber() : book.claimCopy();
     }
 
-    public void returnBook(String memberId, Isbn isbn, LocalDate returnDate)
-            throws LibraryException {
+    // A returned or released copy goes to the next holder, else to the shelf.
+    // Holds are only placed under the ISBN lock after seeing no free copy, and
+    // this re-checks for waiters after shelving, so a copy never sits on the
+    // shelf while someone is queued for it.
+    private void restock(BookItem book, int copy, LocalDate on) {
+        Isbn isbn = book.getIsbn();
+        if (!holds.hasWaiting(isbn)) {
+            book.releaseCopy(copy);
+            facets.availabilityChanged(book);
+            if (!holds.hasWaiting(isbn)) {
+                return;
+            }
+            copy = 0; // a hold was placed meanwhile; serve it from any free copy
+        }
+        Lock lock = isbnLocks.lockFor(isbn);
+        lock.lock();
+        try {
+            while (holds.hasWaiting(isbn)) {
+                int next = copy != 0 ? copy : book.claimCopy();
+                if (next == 0) {
+                    break;
+                }
+                copy = 0;
+                Reservation reservation = holds.promote(isbn, next, on);
+                for (LibraryListener listener : listeners) {
+                    listener.onReserved(reservation);
+                }
+            }
+            if (copy != 0) {
+                book.releaseCopy(copy);
+            }
+            facets.availabilityChanged(book);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        LoanRecord recordToClose = loans.stream()
-                .filter(r -> r.isbn().equals(isbn) && r.memberId().equals(memberId))
-                .findFirst()
-                .orElseThrow(() -> new LibraryException("No loan found for this member and book."));
+    // the exceptions the throwing API has always used for each status
+    private static LibraryException toException(LoanStatus status, String memberId, Isbn isbn) {
+        return switch (status) {
+            case UNKNOWN_MEMBER -> new NotFoundException("No user with ID " + memberId);
+            case UNKNOWN_BOOK -> new NotFoundException("Book not found for ISBN " + isbn.value());
+            case NO_ACTIVE_LOAN -> new NotFoundException(status.message());
+            case NOT_AVAILABLE, RESERVED -> new BookNotAvailableException(status.message());
+            default -> new LibraryException(status.message());
+        };
+    }
 
-        LibraryItem item = findItemByIsbn(isbn);
-        if (item instanceof BookItem book) {
-            book.setAvailable(true);
+    // Borrows every ISBN for one member or none of them. The member is resolved
+    // once and the ISBN locks are taken together in stripe order; failures are
+    // reported per item instead of thrown.
+    public BatchResult borrowBooks(String memberId, List<Isbn> isbns, LocalDate borrowDate) {
+        return timed(LibraryMetrics.Operation.BORROW_BOOKS, () -> {
+            LoanOutcome[] outcomes = new LoanOutcome[isbns.size()];
+            catalogLock.readLock().lock();
+            try {
+                LibraryUser user = users.get(memberId);
+                if (user == null || !(user instanceof AbstractMember)) {
+                    Arrays.fill(outcomes, user == null ? LoanStatus.UNKNOWN_MEMBER : LoanStatus.NOT_A_MEMBER);
+                    return new BatchResult(false, Arrays.asList(outcomes));
+                }
+                BookItem[] books = new BookItem[outcomes.length];
+                boolean failed = resolveBatch(isbns, books, outcomes);
+
+                int[] held = isbnLocks.lockAll(isbns);
+                try {
+                    // take every copy first; give them all back if any is missing
+                    int[] copies = new int[books.length];
+                    for (int i = 0; i < books.length; i++) {
+                        if (outcomes[i] != null) {
+                            continue;
+                        }
+                        if (loans.find(memberId, books[i].getIsbn()) != null) {
+                            outcomes[i] = LoanStatus.ALREADY_BORROWED;
+                        } else {
+                            copies[i] = takeCopy(books[i], memberId, borrowDate);
+                            if (copies[i] == 0) {
+                                outcomes[i] = holds.hasReservations(books[i].getIsbn())
+                                        ? LoanStatus.RESERVED : LoanStatus.NOT_AVAILABLE;
+                            }
+                        }
+                        failed |= outcomes[i] != null;
+                    }
+                    // Single borrows open loans under these same ISBN locks, so
+                    // none should fail here; still, open every loan before
+                    // announcing any, and undo them all if one fails.
+                    LoanRecord[] records = new LoanRecord[books.length];
+                    for (int i = 0; !failed && i < books.length; i++) {
+                        LoanRecord record = newLoan(books[i], memberId, copies[i], borrowDate);
+                        if (loans.open(record)) {
+                            records[i] = record;
+                        } else {
+                            outcomes[i] = LoanStatus.ALREADY_BORROWED;
+                            failed = true;
+                        }
+                    }
+                    if (failed) {
+                        for (int i = 0; i < books.length; i++) {
+                            if (records[i] != null && loans.close(memberId, books[i].getIsbn()) == null) {
+                                copies[i] = 0; // a concurrent return already shelved it
+                            }
+                        }
+                        for (int i = 0; i < books.length; i++) {
+                            if (copies[i] != 0 && holds.reservation(books[i].getIsbn(), memberId) == null) {
+                                restock(books[i], copies[i], borrowDate);
+                            }
+                        }
+                        return abortBatch(outcomes);
+                    }
+                    for (int i = 0; i < books.length; i++) {
+                        announceLoan(books[i], records[i]);
+                        holds.release(books[i].getIsbn(), memberId);
+                        outcomes[i] = records[i];
+                    }
+                    return new BatchResult(true, Arrays.asList(outcomes));
+                } finally {
+                    isbnLocks.unlock(held);
+                }
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
+    }
+
+    // Returns every ISBN for one member or none of them; see borrowBooks.
+    public BatchResult returnBooks(String memberId, List<Isbn> isbns, LocalDate returnDate) {
+        return timed(LibraryMetrics.Operation.RETURN_BOOKS, () -> {
+            LoanOutcome[] outcomes = new LoanOutcome[isbns.size()];
+            catalogLock.readLock().lock();
+            try {
+                BookItem[] books = new BookItem[outcomes.length];
+                boolean failed = resolveBatch(isbns, books, outcomes);
+
+                int[] held = isbnLocks.lockAll(isbns);
+                try {
+                    LoanRecord[] open = new LoanRecord[outcomes.length];
+                    for (int i = 0; i < books.length; i++) {
+                        if (outcomes[i] == null) {
+                            open[i] = loans.find(memberId, books[i].getIsbn());
+                            if (open[i] == null) {
+                                outcomes[i] = LoanStatus.NO_ACTIVE_LOAN;
+                                failed = true;
+                            }
+                        }
+                    }
+                    // close all before touching copies, so a failure can be undone
+                    for (int i = 0; !failed && i < books.length; i++) {
+                        if (loans.close(memberId, books[i].getIsbn()) == null) {
+                            outcomes[i] = LoanStatus.NO_ACTIVE_LOAN;
+                            failed = true;
+                            reopen(open, i, returnDate);
+                        }
+                    }
+                    if (failed) {
+                        return abortBatch(outcomes);
+                    }
+                    for (int i = 0; i < books.length; i++) {
+                        LoanRecord record = open[i];
+                        history.archive(record, returnDate);
+                        for (LibraryListener listener : listeners) {
+                            listener.onReturned(record, returnDate);
+                        }
+                        restock(books[i], record.copyNumber(), returnDate);
+                        outcomes[i] = record;
+                    }
+                    return new BatchResult(true, Arrays.asList(outcomes));
+                } finally {
+                    isbnLocks.unlock(held);
+                }
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
+    }
+
+    // Puts back the first count loans a failed batch return closed. The member
+    // may have borrowed one of those titles again meanwhile; that old loan
+    // cannot be reopened, so its return is completed to keep the copy from
+    // leaking, and the batch fails loudly instead of reporting a rollback.
+    private void reopen(LoanRecord[] closed, int count, LocalDate returnDate) {
+        List<LoanRecord> lost = new ArrayList<>();
+        for (int j = 0; j < count; j++) {
+            if (!loans.open(closed[j])) {
+                lost.add(closed[j]);
+            }
+        }
+        for (LoanRecord record : lost) {
+            history.archive(record, returnDate);
+            for (LibraryListener listener : listeners) {
+                listener.onReturned(record, returnDate);
+            }
+            restock(booksByIsbn.get(record.isbn()), record.copyNumber(), returnDate);
+        }
+        if (!lost.isEmpty()) {
+            throw new IllegalStateException("Batch return could not be rolled back; returned anyway: " + lost);
         }
+    }
+
+    // Joins the FIFO hold queue for a book with no copy on the shelf. Returns
+    // AVAILABLE, without queueing, when a copy can simply be borrowed.
+    public HoldStatus placeHold(String memberId, Isbn isbn) {
+        return timed(LibraryMetrics.Operation.PLACE_HOLD, () -> {
+            catalogLock.readLock().lock();
+            try {
+                LibraryUser user = users.get(memberId);
+                if (user == null) {
+                    return HoldStatus.UNKNOWN_MEMBER;
+                }
+                if (!(user instanceof AbstractMember)) {
+                    return HoldStatus.NOT_A_MEMBER;
+                }
+                BookItem book = booksByIsbn.get(isbn);
+                if (book == null) {
+                    return HoldStatus.UNKNOWN_BOOK;
+                }
+                Lock lock = isbnLocks.lockFor(isbn);
+                lock.lock();
+                try {
+                    if (loans.find(memberId, isbn) != null) {
+                        return HoldStatus.ALREADY_HOLDING;
+                    }
+                    HoldStatus status = holds.enqueue(isbn, memberId);
+                    // enqueue before looking at the shelf: a concurrent return
+                    // either sees this hold or left a copy we see here
+                    if (status == HoldStatus.QUEUED && book.isAvailable()) {
+                        holds.dequeue(isbn, memberId);
+                        return HoldStatus.AVAILABLE;
+                    }
+                    if (status == HoldStatus.QUEUED) {
+                        for (LibraryListener listener : listeners) {
+                            listener.onHoldPlaced(isbn, memberId);
+                        }
+                    }
+                    return status;
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
+    }
 
-        boolean overdue = Borrowable.isOverdue(recordToClose.dueDate(), returnDate);
-        if (overdue) {
-            System.out.println("Warning: this book is overdue!");
+    // Leaves the queue, or gives up a copy already set aside for the member,
+    // which then goes to the next holder. Returns false if there was no hold.
+    public boolean cancelHold(String memberId, Isbn isbn, LocalDate on) {
+        return timed(LibraryMetrics.Operation.CANCEL_HOLD, () -> {
+            catalogLock.readLock().lock();
+            try {
+                Lock lock = isbnLocks.lockFor(isbn);
+                lock.lock();
+                try {
+                    if (holds.dequeue(isbn, memberId)) {
+                        for (LibraryListener listener : listeners) {
+                            listener.onHoldCancelled(isbn, memberId);
+                        }
+                        return true;
+                    }
+                    Reservation reserved = holds.reservation(isbn, memberId);
+                    BookItem book = booksByIsbn.get(isbn);
+                    if (reserved == null || book == null) {
+                        return false;
+                    }
+                    passOn(book, reserved, on);
+                    return true;
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
+    }
+
+    // 1-based place in the hold queue, or 0 if the member is not waiting
+    public int holdPosition(String memberId, Isbn isbn) {
+        Lock lock = isbnLocks.lockFor(isbn);
+        lock.lock();
+        try {
+            return holds.position(isbn, memberId);
+        } finally {
+            lock.unlock();
         }
+    }
 
-        loans.remove(recordToClose);
+    public List<Reservation> reservationsFor(Isbn isbn) {
+        return holds.reservations(isbn);
+    }
+
+    // Passes every reservation not picked up by its deadline on to the next
+    // holder. Borrow attempts do the same lazily for the book they touch; call
+    // this periodically so idle copies do not stay set aside. Returns how many
+    // reservations expired.
+    public int expireReservations(LocalDate on) {
+        return timed(LibraryMetrics.Operation.EXPIRE_RESERVATIONS, () -> {
+            int expired = 0;
+            catalogLock.readLock().lock();
+            try {
+                for (Reservation candidate : holds.expiredAsOf(on)) {
+                    Lock lock = isbnLocks.lockFor(candidate.isbn());
+                    lock.lock();
+                    try {
+                        Reservation current = holds.reservation(candidate.isbn(), candidate.memberId());
+                        BookItem book = booksByIsbn.get(candidate.isbn());
+                        if (current != null && book != null && current.isExpired(on)) {
+                            passOn(book, current, on);
+                            expired++;
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+            return expired;
+        });
+    }
+
+    // caller holds the ISBN lock
+    private void passOn(BookItem book, Reservation released, LocalDate on) {
+        holds.release(book.getIsbn(), released.memberId());
+        for (LibraryListener listener : listeners) {
+            listener.onReservationReleased(released);
+        }
+        restock(book, released.copyNumber(), on);
+    }
+
+    // looks up each ISBN under the catalog read lock, recording unknown and
+    // repeated ISBNs in outcomes; returns whether any item failed
+    private boolean resolveBatch(List<Isbn> isbns, BookItem[] books, LoanOutcome[] outcomes) {
+        boolean failed = false;
+        Set<Isbn> seen = new HashSet<>();
+        for (int i = 0; i < books.length; i++) {
+            Isbn isbn = Objects.requireNonNull(isbns.get(i));
+            books[i] = booksByIsbn.get(isbn);
+            if (books[i] == null) {
+                outcomes[i] = LoanStatus.UNKNOWN_BOOK;
+                failed = true;
+            } else if (!seen.add(isbn)) {
+                outcomes[i] = LoanStatus.DUPLICATE_IN_BATCH;
+                failed = true;
+            }
+        }
+        return failed;
+    }
+
+    private static BatchResult abortBatch(LoanOutcome[] outcomes) {
+        for (int i = 0; i < outcomes.length; i++) {
+            if (outcomes[i] == null) {
+                outcomes[i] = LoanStatus.ABORTED;
+            }
+        }
+        return new BatchResult(false, Arrays.asList(outcomes));
     }
 
     public void printLoans() {
@@ -96,73 +879,571 @@ public class Library {
             System.out.println("No active loans.");
             return;
         }
-        loans.forEach(record -> System.out.printf(
-                "Loan #%d - Member %s - ISBN %s - Borrowed %s - Due %s%n",
-                record.loanId(), record.memberId(), record.isbn().value(),
-                record.borrowDate(), record.dueDate()));
+        console.renderLoans(streamLoans());
     }
 
-    public void printItemsByType() {
-        items.forEach(item -> {
-            String description = switch (item) {
-                case BookItem b -> "Book:      " + formatItem(b);
-                default -> "Unknown item: " + item.getTitle();
-            };
-            System.out.println(description);
+    public List<LoanRecord> findOverdueLoans(LocalDate asOf) {
+        return timed(LibraryMetrics.Operation.FIND_OVERDUE_LOANS, () -> {
+            return loans.dueDates().overdueAsOf(asOf);
         });
     }
 
-    private String formatItem(LibraryItem item) {
-        return switch (item) {
-            case BookItem b -> String.format("%s (ISBN %s) by %s [%s] - %s",
-                    b.getTitle(), b.getIsbn().value(), b.getAuthor(), b.getGenre(),
-                    b.isAvailable() ? "Available" : "On loan");
-            default -> item.getTitle();
-        };
+    public List<LoanRecord> findLoansDueWithin(LocalDate from, int days) {
+        return timed(LibraryMetrics.Operation.FIND_LOANS_DUE_WITHIN, () -> {
+            return loans.dueDates().dueWithin(from, days);
+        });
+    }
+
+    // closed loans of the member, oldest return first; active loans are not included
+    public List<ClosedLoan> findLoanHistory(String memberId) {
+        return timed(LibraryMetrics.Operation.FIND_LOAN_HISTORY, () -> {
+            return history.historyOf(memberId);
+        });
+    }
+
+    public List<ClosedLoan> findLoansReturnedBetween(LocalDate from, LocalDate to) {
+        return timed(LibraryMetrics.Operation.FIND_LOANS_RETURNED_BETWEEN, () -> {
+            return history.returnedBetween(from, to).toList();
+        });
+    }
+
+    // loans of the ISBN borrowed between from and to inclusive, closed or still active
+    public int countBorrows(Isbn isbn, LocalDate from, LocalDate to) {
+        return timed(LibraryMetrics.Operation.COUNT_BORROWS, () -> {
+            int count = history.borrowCount(isbn, from, to);
+            for (LoanRecord record : loans.loansOf(isbn)) {
+                if (!record.borrowDate().isBefore(from) && !record.borrowDate().isAfter(to)) {
+                    count++;
+                }
+            }
+            return count;
+        });
+    }
+
+    public void printLoanHistory(String memberId) {
+        List<ClosedLoan> closed = findLoanHistory(memberId);
+        if (closed.isEmpty()) {
+            System.out.println("No past loans.");
+            return;
+        }
+        console.renderLoanHistory(closed.stream());
+    }
+
+    public void printOverdueLoans(LocalDate asOf) {
+        List<LoanRecord> overdue = findOverdueLoans(asOf);
+        if (overdue.isEmpty()) {
+            System.out.println("No overdue loans.");
+            return;
+        }
+        console.renderOverdueLoans(overdue.stream(), asOf);
+    }
+
+    public void printItemsByType() {
+        try (CatalogSnapshot snapshot = snapshot()) {
+            console.renderItemsByType(snapshot, snapshot.items());
+        }
     }
 
     // overloading: by ID (for non-book items) vs by ISBN
     public LibraryItem findItemById(String id) throws LibraryException {
-        return items.stream()
-                .filter(item -> item.getId().equals(id))
-                .findFirst()
-                .orElseThrow(() -> new LibraryException("Item not found for ID " + id));
+        return timed(LibraryMetrics.Operation.FIND_ITEM_BY_ID, () -> {
+            catalogLock.readLock().lock();
+            try {
+                LibraryItem item = items.get(id);
+                if (item == null) {
+                    throw new NotFoundException("Item not found for ID " + id);
+                }
+                return item;
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
     }
 
     public LibraryItem findItemByIsbn(Isbn isbn) throws LibraryException {
-        return items.stream()
-                .filter(item -> item instanceof BookItem b && b.getIsbn().equals(isbn))
-                .findFirst()
-                .orElseThrow(() -> new LibraryException("Book not found for ISBN " + isbn.value()));
+        return timed(LibraryMetrics.Operation.FIND_ITEM_BY_ISBN, () -> {
+            catalogLock.readLock().lock();
+            try {
+                return requireBook(isbn);
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
     }
 
     public LibraryUser findUserById(String memberId) throws LibraryException {
-        return users.stream()
-                .filter(u -> u.getId().equals(memberId))
-                .findFirst()
-                .orElseThrow(() -> new LibraryException("No user with ID " + memberId));
+        return timed(LibraryMetrics.Operation.FIND_USER_BY_ID, () -> {
+            catalogLock.readLock().lock();
+            try {
+                return requireUser(memberId);
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
     }
 
-    public void addBook(BookItem book) {
-        Objects.requireNonNull(book);
-        boolean exists = items.stream()
-                .filter(i -> i instanceof BookItem)
-                .map(i -> ((BookItem) i).getIsbn().value())
-                .anyMatch(isbn -> isbn.equals(book.getIsbn().value()));
-        if (!exists) {
-            this.items.add(book);
-            System.out.println("Book added successfully!");
-        } else {
-            System.out.println("Book with ISBN " + book.getIsbn().value() + " already exists.");
+    // Optional-returning lookups for callers where a miss is a normal outcome
+    public Optional<LibraryItem> lookupItemById(String id) {
+        return timed(LibraryMetrics.Operation.LOOKUP_ITEM_BY_ID, () -> {
+            catalogLock.readLock().lock();
+            try {
+                return Optional.ofNullable(items.get(id));
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
+    }
+
+    public Optional<BookItem> lookupBookByIsbn(Isbn isbn) {
+        return timed(LibraryMetrics.Operation.LOOKUP_BOOK_BY_ISBN, () -> {
+            catalogLock.readLock().lock();
+            try {
+                return Optional.ofNullable(booksByIsbn.get(isbn));
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
+    }
+
+    public Optional<LibraryUser> lookupUserById(String memberId) {
+        return timed(LibraryMetrics.Operation.LOOKUP_USER_BY_ID, () -> {
+            catalogLock.readLock().lock();
+            try {
+                return Optional.ofNullable(users.get(memberId));
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+        });
+    }
+
+    // lookups for callers that already hold the catalog lock
+    private BookItem requireBook(Isbn isbn) throws LibraryException {
+        BookItem book = booksByIsbn.get(isbn);
+        if (book == null) {
+            throw new NotFoundException("Book not found for ISBN " + isbn.value());
         }
+        return book;
+    }
+
+    private LibraryUser requireUser(String memberId) throws LibraryException {
+        LibraryUser user = users.get(memberId);
+        if (user == null) {
+            throw new NotFoundException("No user with ID " + memberId);
+        }
+        return user;
+    }
+
+    public void addBook(BookItem book) {
+        timed(LibraryMetrics.Operation.ADD_BOOK, () -> {
+            Objects.requireNonNull(book);
+            boolean exists;
+            catalogLock.writeLock().lock();
+            try {
+                exists = booksByIsbn.containsKey(book.getIsbn());
+                if (!exists) {
+                    indexItem(book);
+                    listeners.forEach(l -> l.onBookAdded(book));
+                }
+            } finally {
+                catalogLock.writeLock().unlock();
+            }
+            if (!exists) {
+                System.out.println("Book added successfully!");
+            } else {
+                System.out.println("Book with ISBN " + book.getIsbn().value() + " already exists.");
+            }
+        });
+    }
+
+    // bulk insert without per-book output; ISBNs already in the catalog are
+    // skipped. Returns how many books were added.
+    public int importBooks(List<BookItem> books) {
+        return timed(LibraryMetrics.Operation.IMPORT_BOOKS, () -> {
+            int added = 0;
+            catalogLock.writeLock().lock();
+            try {
+                for (BookItem book : books) {
+                    if (!booksByIsbn.containsKey(book.getIsbn())) {
+                        indexItem(book);
+                        listeners.forEach(l -> l.onBookAdded(book));
+                        added++;
+                    }
+                }
+            } finally {
+                catalogLock.writeLock().unlock();
+            }
+            return added;
+        });
+    }
+
+    // adds shelf copies to a title already in the catalog; members waiting
+    // on holds are served from them straight away, with pickup counted from on
+    public void addCopies(Isbn isbn, int count, LocalDate on) throws LibraryException {
+        timed(LibraryMetrics.Operation.ADD_COPIES, () -> {
+            BookItem book;
+            // the write lock keeps claims off the copy bitmap while it grows
+            catalogLock.writeLock().lock();
+            try {
+                book = requireBook(isbn);
+                book.addCopies(count);
+                facets.availabilityChanged(book);
+                for (LibraryListener listener : listeners) {
+                    listener.onCopiesAdded(book, count, on);
+                }
+            } finally {
+                catalogLock.writeLock().unlock();
+            }
+            if (holds.hasWaiting(isbn)) {
+                catalogLock.readLock().lock();
+                try {
+                    int copy = book.claimCopy();
+                    if (copy != 0) {
+                        restock(book, copy, on);
+                    }
+                } finally {
+                    catalogLock.readLock().unlock();
+                }
+            }
+        });
     }
 
     public boolean removeBook(Isbn isbn) throws LibraryException {
-        boolean loanActive = loans.stream().anyMatch(l -> l.isbn().equals(isbn));
-        if (loanActive) {
-            throw new LibraryException("Cannot remove book while it has an active loan.");
+        return timed(LibraryMetrics.Operation.REMOVE_BOOK, () -> {
+            // the write lock keeps borrowers out while the loan check and removal run
+            catalogLock.writeLock().lock();
+            try {
+                boolean loanActive = loans.hasActiveLoan(isbn);
+                if (loanActive) {
+                    throw new LibraryException("Cannot remove book while it has an active loan.");
+                }
+                BookItem removed = booksByIsbn.get(isbn);
+                if (removed == null) {
+                    return false;
+                }
+                unindexItem(removed);
+                holds.forget(isbn);
+                listeners.forEach(l -> l.onBookRemoved(isbn));
+                return true;
+            } finally {
+                catalogLock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void setMetrics(LibraryMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    public LibraryMetrics metrics() {
+        return metrics;
+    }
+
+    private interface Call<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private interface Action<E extends Exception> {
+        void run() throws E;
+    }
+
+    // a borrow or return taking the library explicitly, so that the method
+    // reference needs no captured state and the try* calls stay allocation-free
+    private interface LoanCall {
+        LoanOutcome apply(Library library, String memberId, Isbn isbn, LocalDate on);
+    }
+
+    // Runs one public operation, recording its latency under op and, if it
+    // throws, the exception as its failure. Listeners hear that the call
+    // completed once it holds no locks.
+    private <T, E extends Exception> T timed(LibraryMetrics.Operation op, Call<T, E> body) throws E {
+        LibraryMetrics metrics = this.metrics;
+        long started = metrics.start();
+        Throwable failure = null;
+        try {
+            T result = body.run();
+            listeners.forEach(LibraryListener::onCallCompleted);
+            return result;
+        } catch (Exception e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.record(op, started, failure);
+        }
+    }
+
+    private <E extends Exception> void timed(LibraryMetrics.Operation op, Action<E> body) throws E {
+        timed(op, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    // the non-throwing API records a refused loan by its LoanStatus
+    private LoanOutcome timed(LibraryMetrics.Operation op, LoanCall call, String memberId, Isbn isbn, LocalDate on) {
+        LibraryMetrics metrics = this.metrics;
+        long started = metrics.start();
+        LoanOutcome outcome = null;
+        try {
+            outcome = call.apply(this, memberId, isbn, on);
+            listeners.forEach(LibraryListener::onCallCompleted);
+            return outcome;
+        } finally {
+            metrics.record(op, started, outcome);
+        }
+    }
+
+    public void addListener(LibraryListener listener) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    public void removeListener(LibraryListener listener) {
+        listeners.remove(listener);
+    }
+
+    // package-private hooks for LibraryStore snapshots and log replay
+
+    <T> T withCatalogLocked(Supplier<T> action) {
+        catalogLock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    Collection<LibraryItem> allItems() {
+        return itemOrder.values().toList();
+    }
+
+    Collection<LibraryUser> allUsers() {
+        return users.values();
+    }
+
+    Collection<LoanRecord> activeLoans() {
+        return loans.all();
+    }
+
+    List<LoanRecord> activeLoansOf(Isbn isbn) {
+        return List.copyOf(loans.loansOf(isbn));
+    }
+
+    LoanArchive history() {
+        return history;
+    }
+
+    // Recounts autocomplete popularity from the loan history and active loans,
+    // for when the history was restored wholesale rather than replayed.
+    void refreshPopularity() {
+        catalogLock.writeLock().lock();
+        try {
+            Map<Object, Integer> counts = new HashMap<>();
+            history.returnedBetween(FIRST_DAY, LAST_DAY).forEach(closed -> {
+                counts.merge(closed.isbn(), 1, Integer::sum);
+                counts.merge(closed.memberId(), 1, Integer::sum);
+            });
+            for (LoanRecord record : loans.all()) {
+                counts.merge(record.isbn(), 1, Integer::sum);
+                counts.merge(record.memberId(), 1, Integer::sum);
+            }
+            autocomplete.resetPopularity(counts);
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    int lastLoanId() {
+        return loans.lastLoanId();
+    }
+
+    void advanceLoanIds(int atLeast) {
+        loans.advanceLoanIds(atLeast);
+    }
+
+    // a loan of a reserved title is always of the member's reserved copy, so
+    // it also fulfils and ends their reservation
+    void restoreLoan(LoanRecord record) {
+        catalogLock.writeLock().lock();
+        try {
+            holds.release(record.isbn(), record.memberId());
+            loans.open(record);
+            loans.advanceLoanIds(record.loanId());
+            BookItem book = booksByIsbn.get(record.isbn());
+            if (book != null) {
+                book.markCopy(record.copyNumber(), true);
+                facets.availabilityChanged(book);
+            }
+            autocomplete.borrowed(record.isbn(), record.memberId());
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    // Hand-off between shards (see ShardedLibrary.addShard). attachBook takes a
+    // book in with its active loans, hold queue and reservations; detachBook
+    // then takes it out of the old shard with all of them. Listeners hear the
+    // attach as an add followed by the loans, holds and reservations, and the
+    // detach as a removal, so a LibraryStore on either shard replays the move.
+
+    void attachBook(BookItem book, List<LoanRecord> active, List<String> waiting,
+            List<Reservation> reserved) {
+        List<LoanRecord> opened = new ArrayList<>(active.size());
+        catalogLock.writeLock().lock();
+        try {
+            indexItem(book);
+            // loan ids are per Library, so moved loans are numbered afresh
+            for (LoanRecord record : active) {
+                LoanRecord moved = new LoanRecord(loans.nextLoanId(), record.isbn(), record.memberId(),
+                        record.borrowDate(), record.dueDate(), record.copyNumber());
+                loans.open(moved);
+                book.markCopy(moved.copyNumber(), true);
+                opened.add(moved);
+            }
+            for (String memberId : waiting) {
+                holds.enqueue(book.getIsbn(), memberId);
+            }
+            for (Reservation reservation : reserved) {
+                holds.restore(reservation);
+                book.markCopy(reservation.copyNumber(), true);
+            }
+            facets.availabilityChanged(book);
+            for (LibraryListener listener : listeners) {
+                listener.onBookAdded(book);
+                opened.forEach(listener::onBorrowed);
+                waiting.forEach(memberId -> listener.onHoldPlaced(book.getIsbn(), memberId));
+                reserved.forEach(listener::onReserved);
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+        listeners.forEach(LibraryListener::onCallCompleted);
+    }
+
+    void detachBook(Isbn isbn) {
+        catalogLock.writeLock().lock();
+        try {
+            if (dropBook(isbn)) {
+                listeners.forEach(l -> l.onBookRemoved(isbn));
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+        listeners.forEach(LibraryListener::onCallCompleted);
+    }
+
+    // the loan check is skipped: a removal with loans still open is a book
+    // that moved to another shard, and its loans went with it
+    void restoreRemoval(Isbn isbn) {
+        catalogLock.writeLock().lock();
+        try {
+            dropBook(isbn);
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    // caller holds the catalog write lock
+    private boolean dropBook(Isbn isbn) {
+        BookItem book = booksByIsbn.get(isbn);
+        if (book == null) {
+            return false;
+        }
+        for (LoanRecord record : new ArrayList<>(loans.loansOf(isbn))) {
+            loans.close(record.memberId(), isbn);
+        }
+        unindexItem(book);
+        holds.forget(isbn);
+        return true;
+    }
+
+    List<String> holdQueueOf(Isbn isbn) {
+        return holds.queue(isbn);
+    }
+
+    void restoreReturn(String memberId, Isbn isbn, LocalDate returnDate) {
+        catalogLock.writeLock().lock();
+        try {
+            LoanRecord record = loans.close(memberId, isbn);
+            if (record != null) {
+                history.archive(record, returnDate);
+            }
+            BookItem book = booksByIsbn.get(isbn);
+            if (record != null && book != null) {
+                book.markCopy(record.copyNumber(), false);
+                facets.availabilityChanged(book);
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    // unlike addCopies, never hands the new copies to waiting members; the
+    // log has its own records for the reservations that followed
+    void restoreCopies(Isbn isbn, int count) {
+        catalogLock.writeLock().lock();
+        try {
+            BookItem book = booksByIsbn.get(isbn);
+            if (book != null) {
+                book.addCopies(count);
+                facets.availabilityChanged(book);
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    Map<Isbn, List<String>> holdQueues() {
+        return holds.queues();
+    }
+
+    List<Reservation> allReservations() {
+        return holds.allReservations();
+    }
+
+    void restoreHold(Isbn isbn, String memberId) {
+        catalogLock.writeLock().lock();
+        try {
+            holds.enqueue(isbn, memberId);
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    void restoreHoldCancelled(Isbn isbn, String memberId) {
+        catalogLock.writeLock().lock();
+        try {
+            holds.dequeue(isbn, memberId);
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    // sets the reserved copy aside again
+    void restoreReservation(Reservation reservation) {
+        catalogLock.writeLock().lock();
+        try {
+            BookItem book = booksByIsbn.get(reservation.isbn());
+            if (book != null) {
+                holds.restore(reservation);
+                book.markCopy(reservation.copyNumber(), true);
+                facets.availabilityChanged(book);
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    void restoreReservationReleased(Isbn isbn, String memberId) {
+        catalogLock.writeLock().lock();
+        try {
+            Reservation released = holds.release(isbn, memberId);
+            BookItem book = booksByIsbn.get(isbn);
+            if (released != null && book != null) {
+                book.markCopy(released.copyNumber(), false);
+                facets.availabilityChanged(book);
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
         }
-        return this.items.removeIf(item -> (item instanceof BookItem b) && b.getIsbn().equals(isbn));
     }
 
 }
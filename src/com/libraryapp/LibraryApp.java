@@ -1,20 +1,35 @@
 package com.libraryapp;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.Scanner;
 
 public class LibraryApp {
 
+    private static final int SEARCH_RESULTS = 20;
+
     private final Scanner scanner = new Scanner(System.in);
     private final Library library;
 
     public LibraryApp() {
-        this.library = Data.createLibrary();
+        this(Data.createLibrary());
+    }
+
+    public LibraryApp(Library library) {
+        this.library = library;
     }
 
-    public static void main(String[] args) {
-        var app = new LibraryApp();
-        app.run();
+    // optional argument: data directory to keep the library in between runs
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            new LibraryApp().run();
+            return;
+        }
+        try (LibraryStore store = LibraryStore.open(Path.of(args[0]), Data::createLibrary)) {
+            new LibraryApp(store.library()).run();
+            store.checkpoint();
+        }
     }
 
     private void run() {
@@ -38,12 +53,14 @@ public class LibraryApp {
     private void printMenu() {
         StringBuilder sb = new StringBuilder(); // StringBuilder from core API
         sb.append("1. List all items\n")
-                .append("2. Search items by title\n")
+                .append("2. Search items by title or author\n")
                 .append("3. Borrow a book\n")
                 .append("4. Return a book\n")
                 .append("5. List active loans\n")
                 .append("6. Add a book (Admin Only)\n")
                 .append("7. Remove a book by ISBN (Admin Only)\n")
+                .append("8. List overdue loans\n")
+                .append("9. Show a member's loan history\n")
                 .append("0. Exit\n")
                 .append("Choose an option: ");
         System.out.print(sb);
@@ -92,6 +109,14 @@ public class LibraryApp {
                 removeBook();
                 yield true;
             }
+            case 8 -> {
+                listOverdueLoans();
+                yield true;
+            }
+            case 9 -> {
+                showLoanHistory();
+                yield true;
+            }
 
             case 0 -> false;
             default -> throw new InvalidCommandException("Unknown menu option: " + choice);
@@ -104,9 +129,15 @@ public class LibraryApp {
     }
 
     private void searchItems() {
-        System.out.print("Enter part of the title: ");
+        System.out.print("Enter part of the title or author: ");
         String query = scanner.nextLine().trim();
-        library.printMatchingItems(item -> item.getTitle().toLowerCase().contains(query.toLowerCase()));
+        if (query.isEmpty()) {
+            // nothing to rank; the plain search lists every book
+            library.printSearchResults(query);
+            return;
+        }
+        // ranked and typo-tolerant, so "Efective Java" still finds the book
+        library.printFuzzySearchResults(query, SEARCH_RESULTS);
     }
 
     private void borrowBook() throws LibraryException {
@@ -139,6 +170,18 @@ public class LibraryApp {
         library.printLoans();
     }
 
+    private void listOverdueLoans() {
+        System.out.println("\n--- Overdue Loans ---");
+        library.printOverdueLoans(LocalDate.now());
+    }
+
+    private void showLoanHistory() {
+        System.out.print("Enter member ID: ");
+        String memberId = scanner.nextLine().trim();
+        System.out.println("\n--- Loan History ---");
+        library.printLoanHistory(memberId);
+    }
+
     private void addBook() throws LibraryException {
         System.out.print("Enter admin ID: ");
         String adminId = scanner.nextLine().trim();
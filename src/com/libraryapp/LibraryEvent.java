@@ -0,0 +1,91 @@
+package com.libraryapp;
+
+import java.time.LocalDate;
+
+// One slot of a LibraryEventStream ring. Slots are allocated once and
+// rewritten for every lap, so a handler must copy out whatever it keeps after
+// onEvent returns. Fields that do not apply to the type are null or 0.
+public final class LibraryEvent {
+
+    public enum Type {
+        BOOK_ADDED,
+        COPIES_ADDED,
+        BOOK_REMOVED,
+        USER_ADDED,
+        BORROWED,
+        RETURNED
+    }
+
+    private long sequence;
+    private Type type;
+    private Isbn isbn;
+    private BookItem book;
+    private int copiesAdded;
+    private LibraryUser user;
+    private LoanRecord loan;
+    private LocalDate returnDate;
+
+    LibraryEvent() {
+    }
+
+    // only called by the producer that claimed the slot, before publishing it
+    void set(long sequence, Type type, Isbn isbn, BookItem book, int copiesAdded,
+            LibraryUser user, LoanRecord loan, LocalDate returnDate) {
+        this.sequence = sequence;
+        this.type = type;
+        this.isbn = isbn;
+        this.book = book;
+        this.copiesAdded = copiesAdded;
+        this.user = user;
+        this.loan = loan;
+        this.returnDate = returnDate;
+    }
+
+    public long sequence() {
+        return sequence;
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    // every type but USER_ADDED
+    public Isbn isbn() {
+        return isbn;
+    }
+
+    // BOOK_ADDED and COPIES_ADDED
+    public BookItem book() {
+        return book;
+    }
+
+    public int copiesAdded() {
+        return copiesAdded;
+    }
+
+    // USER_ADDED
+    public LibraryUser user() {
+        return user;
+    }
+
+    // BORROWED and RETURNED
+    public LoanRecord loan() {
+        return loan;
+    }
+
+    // RETURNED
+    public LocalDate returnDate() {
+        return returnDate;
+    }
+
+    @Override
+    public String toString() {
+        return "LibraryEvent{sequence=" + sequence + ", type=" + type
+                + (isbn != null ? ", isbn=" + isbn : "")
+                + (user != null ? ", user=" + user.getId() : "")
+                + (loan != null ? ", loan=" + loan.loanId() + ", member=" + loan.memberId() : "")
+                + (copiesAdded != 0 ? ", copiesAdded=" + copiesAdded : "")
+                + (returnDate != null ? ", returnDate=" + returnDate : "")
+                + '}';
+    }
+}
@@ -0,0 +1,401 @@
+package com.libraryapp;
+
+import java.io.Closeable;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// In-process change feed for a Library. Every mutation is written into a
+// preallocated ring of LibraryEvent slots on the mutating thread. Each
+// subscription has its own thread and sequence and sees every event published
+// after it subscribed, in sequence order, in batches of whatever was
+// published since it last looked.
+//
+// A producer claims a sequence with one CAS and publishes it by storing the
+// slot's lap number, so mutating threads never take a lock and nothing is
+// allocated per event. When the slowest subscription is a whole lap behind the
+// ring is full: BLOCK makes the producer wait for it, DROP skips the event and
+// counts it. Under BLOCK a handler must not wait on the Library, or it can
+// deadlock with a producer that is waiting for the handler.
+public final class LibraryEventStream implements LibraryListener, Closeable {
+
+    public enum Backpressure {
+        BLOCK,
+        DROP
+    }
+
+    // how an idle subscription waits for the next event
+    public enum WaitStrategy {
+        BUSY_SPIN, // lowest latency, keeps a core busy per subscription
+        YIELDING,  // spins briefly, then yields the core
+        SLEEPING,  // spins, yields, then parks for short intervals
+        BLOCKING   // sleeps on a condition that producers signal
+    }
+
+    @FunctionalInterface
+    public interface Handler {
+        // endOfBatch marks the last event published so far: a good point to flush
+        void onEvent(LibraryEvent event, boolean endOfBatch) throws Exception;
+    }
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long BLOCK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Library library;
+    private final LibraryEvent[] ring;
+    private final int mask;
+    private final int shift;
+    // lap of the sequence last published into each slot, -1 before the first
+    private final AtomicIntegerArray published;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    // a lower bound for every subscription sequence, so producers only scan
+    // the subscriptions when they are about to lap one
+    private volatile long gatingFloor = -1;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final Backpressure backpressure;
+    private final WaitStrategy waitStrategy;
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean closed;
+
+    // BLOCKING only: producers signal when someone sleeps
+    private final ReentrantLock sleepLock = new ReentrantLock();
+    private final Condition hasEvents = sleepLock.newCondition();
+    private final AtomicInteger sleepers = new AtomicInteger();
+
+    private LibraryEventStream(Library library, int capacity, Backpressure backpressure,
+            WaitStrategy waitStrategy) {
+        this.library = library;
+        this.ring = new LibraryEvent[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new LibraryEvent();
+        }
+        this.mask = capacity - 1;
+        this.shift = Integer.numberOfTrailingZeros(capacity);
+        this.published = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        this.backpressure = backpressure;
+        this.waitStrategy = waitStrategy;
+    }
+
+    public static LibraryEventStream attach(Library library) {
+        return attach(library, DEFAULT_CAPACITY, Backpressure.BLOCK, WaitStrategy.BLOCKING);
+    }
+
+    // capacity is rounded up to a power of two
+    public static LibraryEventStream attach(Library library, int capacity, Backpressure backpressure,
+            WaitStrategy waitStrategy) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + MAX_CAPACITY + ".");
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        LibraryEventStream stream = new LibraryEventStream(Objects.requireNonNull(library), size,
+                Objects.requireNonNull(backpressure), Objects.requireNonNull(waitStrategy));
+        library.addListener(stream);
+        return stream;
+    }
+
+    // Starts a thread that hands every event published from now on to the
+    // handler. A handler that throws is counted and skipped past.
+    public Subscription subscribe(String name, Handler handler) {
+        Objects.requireNonNull(handler);
+        if (closed) {
+            throw new IllegalStateException("Event stream is closed.");
+        }
+        Subscription subscription = new Subscription(name, handler, claimed.get());
+        subscriptions.add(subscription);
+        // a producer that scanned before the add may have claimed up to one
+        // lap past the first read, so start after everything claimed by now
+        subscription.sequence.set(claimed.get());
+        subscription.thread.start();
+        return subscription;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    // highest sequence claimed so far, -1 before the first event
+    public long lastSequence() {
+        return claimed.get();
+    }
+
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    // Detaches from the Library, lets every subscription finish what was
+    // already published, then stops their threads.
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        library.removeListener(this);
+        wakeAll();
+        for (Subscription subscription : subscriptions) {
+            subscription.join();
+        }
+        subscriptions.clear();
+    }
+
+    @Override
+    public void onBookAdded(BookItem book) {
+        publish(LibraryEvent.Type.BOOK_ADDED, book.getIsbn(), book, 0, null, null, null);
+    }
+
+    @Override
+    public void onCopiesAdded(BookItem book, int added, LocalDate on) {
+        publish(LibraryEvent.Type.COPIES_ADDED, book.getIsbn(), book, added, null, null, null);
+    }
+
+    @Override
+    public void onBookRemoved(Isbn isbn) {
+        publish(LibraryEvent.Type.BOOK_REMOVED, isbn, null, 0, null, null, null);
+    }
+
+    @Override
+    public void onUserAdded(LibraryUser user) {
+        publish(LibraryEvent.Type.USER_ADDED, null, null, 0, user, null, null);
+    }
+
+    @Override
+    public void onBorrowed(LoanRecord record) {
+        publish(LibraryEvent.Type.BORROWED, record.isbn(), null, 0, null, record, null);
+    }
+
+    @Override
+    public void onReturned(LoanRecord record, LocalDate returnDate) {
+        publish(LibraryEvent.Type.RETURNED, record.isbn(), null, 0, null, record, returnDate);
+    }
+
+    private void publish(LibraryEvent.Type type, Isbn isbn, BookItem book, int copiesAdded,
+            LibraryUser user, LoanRecord loan, LocalDate returnDate) {
+        if (closed) {
+            return;
+        }
+        long sequence = claim();
+        if (sequence < 0) {
+            return;
+        }
+        int slot = (int) sequence & mask;
+        ring[slot].set(sequence, type, isbn, book, copiesAdded, user, loan, returnDate);
+        // volatile store: the slot's fields are visible to whoever sees the lap,
+        // and a BLOCKING subscription that checked before this is in sleepers
+        published.set(slot, lap(sequence));
+        if (waitStrategy == WaitStrategy.BLOCKING && sleepers.get() > 0) {
+            signalSleepers();
+        }
+    }
+
+    // the claimed sequence, or -1 if the event was dropped
+    private long claim() {
+        for (int round = 0; ; ) {
+            long current = claimed.get();
+            long next = current + 1;
+            long wrapPoint = next - ring.length;
+            if (wrapPoint > gatingFloor) {
+                long floor = minimumSequence(current);
+                gatingFloor = floor;
+                if (wrapPoint > floor) {
+                    if (backpressure == Backpressure.DROP || closed) {
+                        dropped.increment();
+                        return -1;
+                    }
+                    pause(round++);
+                    continue;
+                }
+            }
+            if (claimed.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    private long minimumSequence(long current) {
+        long min = current;
+        for (Subscription subscription : subscriptions) {
+            min = Math.min(min, subscription.sequence.get());
+        }
+        return min;
+    }
+
+    private int lap(long sequence) {
+        return (int) (sequence >>> shift);
+    }
+
+    private boolean isPublished(long sequence) {
+        return published.get((int) sequence & mask) == lap(sequence);
+    }
+
+    // highest contiguously published sequence from next on, or -1 once stopped
+    private long waitFor(Subscription subscription, long next) {
+        for (int round = 0; !isPublished(next); round++) {
+            if (subscription.stopped || (closed && next > claimed.get())) {
+                return -1;
+            }
+            idle(subscription, next, round);
+        }
+        long available = next;
+        while (isPublished(available + 1)) {
+            available++;
+        }
+        return available;
+    }
+
+    private void idle(Subscription subscription, long next, int round) {
+        if (waitStrategy == WaitStrategy.BUSY_SPIN || round < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (waitStrategy == WaitStrategy.YIELDING || round < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else if (waitStrategy == WaitStrategy.SLEEPING) {
+            LockSupport.parkNanos(PARK_NANOS);
+        } else {
+            sleepers.incrementAndGet();
+            sleepLock.lock();
+            try {
+                // recheck after registering, so a publish cannot slip between
+                if (!isPublished(next) && !subscription.stopped && !closed) {
+                    hasEvents.awaitNanos(BLOCK_NANOS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                sleepLock.unlock();
+                sleepers.decrementAndGet();
+            }
+        }
+    }
+
+    // producer side of a full ring
+    private static void pause(int round) {
+        if (round < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (round < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    private void signalSleepers() {
+        sleepLock.lock();
+        try {
+            hasEvents.signalAll();
+        } finally {
+            sleepLock.unlock();
+        }
+    }
+
+    private void wakeAll() {
+        signalSleepers();
+        for (Subscription subscription : subscriptions) {
+            LockSupport.unpark(subscription.thread);
+        }
+    }
+
+    // One consumer of the stream. Its sequence is the last event its handler
+    // finished with; producers never overwrite a slot it has not reached.
+    public final class Subscription implements AutoCloseable {
+
+        private final String name;
+        private final Handler handler;
+        private final AtomicLong sequence;
+        private final Thread thread;
+        private final LongAdder failures = new LongAdder();
+        private volatile Exception lastFailure;
+        private volatile boolean stopped;
+
+        private Subscription(String name, Handler handler, long start) {
+            this.name = name;
+            this.handler = handler;
+            this.sequence = new AtomicLong(start);
+            this.thread = new Thread(this::run, "library-events-" + name);
+            thread.setDaemon(true);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        // last sequence handled
+        public long sequence() {
+            return sequence.get();
+        }
+
+        // events claimed but not yet handled
+        public long lag() {
+            return Math.max(0, claimed.get() - sequence.get());
+        }
+
+        public long failures() {
+            return failures.sum();
+        }
+
+        public Exception lastFailure() {
+            return lastFailure;
+        }
+
+        // Stops at once; events not handled yet are skipped and producers
+        // stop waiting for this subscription.
+        @Override
+        public void close() {
+            stopped = true;
+            subscriptions.remove(this);
+            wakeAll();
+            join();
+        }
+
+        private void run() {
+            long next = sequence.get() + 1;
+            while (true) {
+                long available = waitFor(this, next);
+                if (available < next) {
+                    return;
+                }
+                for (long s = next; s <= available; s++) {
+                    try {
+                        handler.onEvent(ring[(int) s & mask], s == available);
+                    } catch (Exception e) {
+                        failures.increment();
+                        lastFailure = e;
+                    }
+                }
+                sequence.set(available);
+                next = available + 1;
+            }
+        }
+
+        private void join() {
+            if (Thread.currentThread() == thread) {
+                return;
+            }
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.libraryapp;
+
+import java.time.LocalDate;
+
+// Callbacks for successful Library mutations. They run on the mutating thread
+// while the change is still exclusive to it: a returned copy is only shelved
+// after onReturned, so events for one copy arrive in order. Implementations
+// must be quick, thread-safe and must not call back into the Library.
+public interface LibraryListener {
+
+    default void onBookAdded(BookItem book) {
+    }
+
+    default void onBookRemoved(Isbn isbn) {
+    }
+
+    default void onCopiesAdded(BookItem book, int added, LocalDate on) {
+    }
+
+    default void onUserAdded(LibraryUser user) {
+    }
+
+    default void onBorrowed(LoanRecord record) {
+    }
+
+    default void onReturned(LoanRecord record, LocalDate returnDate) {
+    }
+
+    // the member joined the book's hold queue
+    default void onHoldPlaced(Isbn isbn, String memberId) {
+    }
+
+    // the member left the hold queue before a copy was set aside for them
+    default void onHoldCancelled(Isbn isbn, String memberId) {
+    }
+
+    // a returned book was set aside for the next member in its hold queue
+    default void onReserved(Reservation reservation) {
+    }
+
+    // a reservation ended without a loan: expired or cancelled
+    default void onReservationReleased(Reservation reservation) {
+    }
+
+    // Called on the calling thread when a public Library call has finished
+    // and released its locks, so unlike the callbacks above it may block:
+    // LibraryStore waits here until the call's log records are on disk.
+    default void onCallCompleted() {
+    }
+}
@@ -0,0 +1,186 @@
+package com.libraryapp;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Load generator for LibraryServer. Each connection sends batches of
+// pipelined requests and times every reply from the moment its batch was
+// written. Connection c borrows as member M<c> and only touches books
+// c, c + connections, ... so connections never contend for the same copy.
+// Without --port an in-process server with a synthetic catalog is started
+// on loopback; a remote server must run with the same --synthetic size.
+//
+// Mix: 70% BORROW+RETURN pairs, 20% two-word SEARCH, 10% LIST.
+//
+// usage: LibraryLoadClient [--host 127.0.0.1] [--port n] [--books 100000]
+//        [--connections 8] [--pipeline 16] [--warmup 2] [--seconds 10]
+public final class LibraryLoadClient {
+
+    enum Command { BORROW, RETURN, SEARCH, LIST }
+
+    private final InetSocketAddress address;
+    private final int books;
+    private final int connections;
+    private final int pipeline;
+    private final Map<Command, LatencyHistogram> latencies = new EnumMap<>(Command.class);
+    private final LongAdder errors = new LongAdder();
+    private volatile boolean recording;
+    private volatile boolean running = true;
+
+    LibraryLoadClient(InetSocketAddress address, int books, int connections, int pipeline) {
+        this.address = address;
+        this.books = books;
+        this.connections = connections;
+        this.pipeline = pipeline;
+        resetHistograms();
+    }
+
+    private void resetHistograms() {
+        for (Command command : Command.values()) {
+            latencies.put(command, new LatencyHistogram());
+        }
+    }
+
+    private void drive(int connection) {
+        SplittableRandom random = new SplittableRandom(connection * 31L + 7);
+        String member = SyntheticCatalog.memberId(connection);
+        int ownBooks = Math.max(1, (books - connection + connections - 1) / connections);
+        List<Command> sent = new ArrayList<>(pipeline + 1);
+        StringBuilder batch = new StringBuilder(pipeline * 48);
+        try (Socket socket = new Socket()) {
+            socket.setTcpNoDelay(true);
+            socket.connect(address);
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+            while (running) {
+                batch.setLength(0);
+                sent.clear();
+                while (sent.size() < pipeline) {
+                    int roll = random.nextInt(100);
+                    if (roll < 70) {
+                        String isbn = SyntheticCatalog.isbn(connection + random.nextInt(ownBooks) * connections).value();
+                        batch.append("BORROW ").append(member).append(' ').append(isbn).append('\n');
+                        batch.append("RETURN ").append(member).append(' ').append(isbn).append('\n');
+                        sent.add(Command.BORROW);
+                        sent.add(Command.RETURN);
+                    } else if (roll < 90) {
+                        batch.append("SEARCH ").append(SyntheticCatalog.searchTerm(random)).append(' ')
+                                .append(SyntheticCatalog.searchTerm(random)).append('\n');
+                        sent.add(Command.SEARCH);
+                    } else {
+                        batch.append("LIST\n");
+                        sent.add(Command.LIST);
+                    }
+                }
+                long start = System.nanoTime();
+                out.append(batch).flush();
+                for (Command command : sent) {
+                    String header = in.readLine();
+                    if (header == null) {
+                        return;
+                    }
+                    if (header.startsWith("OK ")) {
+                        int end = header.indexOf(' ', 3);
+                        int lines = Integer.parseInt(end < 0 ? header.substring(3) : header.substring(3, end));
+                        for (int i = 0; i < lines; i++) {
+                            in.readLine();
+                        }
+                    } else {
+                        errors.increment();
+                    }
+                    if (recording) {
+                        latencies.get(command).record(System.nanoTime() - start);
+                    }
+                }
+            }
+            out.append("QUIT\n").flush();
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Connection " + connection + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    void run(double warmupSeconds, double seconds) throws InterruptedException {
+        Thread[] threads = new Thread[connections];
+        for (int c = 0; c < connections; c++) {
+            int connection = c;
+            threads[c] = Thread.ofVirtual().start(() -> drive(connection));
+        }
+        Thread.sleep((long) (warmupSeconds * 1000));
+        resetHistograms();
+        errors.reset();
+        recording = true;
+        long start = System.nanoTime();
+        Thread.sleep((long) (seconds * 1000));
+        recording = false;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report(elapsed);
+    }
+
+    private void report(double elapsed) {
+        long total = 0;
+        System.out.printf("%-8s %12s %10s %10s %10s %10s%n", "command", "requests", "p50 us", "p99 us", "p99.9 us", "max us");
+        for (Command command : Command.values()) {
+            LatencyHistogram histogram = latencies.get(command);
+            total += histogram.count();
+            System.out.printf("%-8s %12d %10.1f %10.1f %10.1f %10.1f%n", command, histogram.count(),
+                    histogram.percentile(50) / 1e3, histogram.percentile(99) / 1e3,
+                    histogram.percentile(99.9) / 1e3, histogram.max() / 1e3);
+        }
+        System.out.printf("%,.0f requests/s over %d connections, pipeline depth %d, %d errors%n",
+                total / elapsed, connections, pipeline, errors.sum());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        int books = Integer.parseInt(options.getOrDefault("books", "100000").replace("_", ""));
+        int connections = Integer.parseInt(options.getOrDefault("connections", "8"));
+        int pipeline = Integer.parseInt(options.getOrDefault("pipeline", "16"));
+        double warmup = Double.parseDouble(options.getOrDefault("warmup", "2"));
+        double seconds = Double.parseDouble(options.getOrDefault("seconds", "10"));
+        String host = options.getOrDefault("host", "127.0.0.1");
+
+        LibraryServer embedded = null;
+        InetSocketAddress address;
+        if (options.containsKey("port")) {
+            address = new InetSocketAddress(host, Integer.parseInt(options.get("port")));
+        } else {
+            System.out.printf("Building catalog of %,d books...%n", books);
+            Library library = SyntheticCatalog.create(books, Math.max(1000, books / 10));
+            embedded = new LibraryServer(library, new InetSocketAddress("127.0.0.1", 0)).start();
+            address = new InetSocketAddress("127.0.0.1", embedded.port());
+        }
+        try {
+            new LibraryLoadClient(address, books, connections, pipeline).run(warmup, seconds);
+        } finally {
+            if (embedded != null) {
+                embedded.close();
+            }
+        }
+    }
+}
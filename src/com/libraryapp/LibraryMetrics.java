@@ -0,0 +1,107 @@
+package com.libraryapp;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-operation call/failure counters and latency histograms for a Library.
+// The shared disabled instance never reads the clock or touches a counter,
+// so an uninstrumented Library only pays for two predictable branches.
+public final class LibraryMetrics {
+
+    public enum Operation {
+        ADD_ITEMS, ADD_USER, ADD_BOOK, ADD_COPIES, IMPORT_BOOKS, REMOVE_BOOK,
+        BORROW_BOOK, RETURN_BOOK, BORROW_BOOKS, RETURN_BOOKS,
+        TRY_BORROW_BOOK, TRY_RETURN_BOOK,
+        PLACE_HOLD, CANCEL_HOLD, EXPIRE_RESERVATIONS,
+        FIND_ITEM_BY_ID, FIND_ITEM_BY_ISBN, FIND_USER_BY_ID,
+        LOOKUP_ITEM_BY_ID, LOOKUP_BOOK_BY_ISBN, LOOKUP_USER_BY_ID,
+        QUERY_ITEMS, LIST_LOANS, SEARCH_BOOKS, FUZZY_SEARCH_BOOKS, SUGGEST,
+        COUNT_BOOKS, COUNT_BOOKS_BY_GENRE, FIND_BOOKS,
+        FIND_OVERDUE_LOANS, FIND_LOANS_DUE_WITHIN,
+        FIND_LOAN_HISTORY, FIND_LOANS_RETURNED_BETWEEN, COUNT_BORROWS
+    }
+
+    private static final LibraryMetrics DISABLED = new LibraryMetrics(false);
+
+    private final boolean enabled;
+    private final Map<Operation, LongAdder> failures = new EnumMap<>(Operation.class);
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private LibraryMetrics(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            for (Operation op : Operation.values()) {
+                failures.put(op, new LongAdder());
+                latencies.put(op, new LatencyHistogram());
+            }
+        }
+    }
+
+    public static LibraryMetrics create() {
+        return new LibraryMetrics(true);
+    }
+
+    public static LibraryMetrics disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    // failure is null when the operation completed normally
+    void record(Operation op, long started, Throwable failure) {
+        if (enabled) {
+            record(op, started, failure == null ? null : failure.getClass().getSimpleName());
+        }
+    }
+
+    // for the non-throwing API: a LoanStatus counts as a failure of that name
+    void record(Operation op, long started, LoanOutcome outcome) {
+        if (enabled) {
+            record(op, started, outcome instanceof LoanStatus status ? status.name() : null);
+        }
+    }
+
+    private void record(Operation op, long started, String failure) {
+        long nanos = System.nanoTime() - started;
+        latencies.get(op).record(nanos);
+        if (failure != null) {
+            failures.get(op).increment();
+            errors.computeIfAbsent(failure, f -> new LongAdder()).increment();
+        }
+        LibraryOperationEvent event = new LibraryOperationEvent();
+        if (event.shouldCommit()) {
+            event.operation = op.name();
+            event.latency = nanos;
+            event.failure = failure;
+            event.commit();
+        }
+    }
+
+    public MetricsSnapshot snapshot() {
+        Map<Operation, MetricsSnapshot.OperationStats> operations = new EnumMap<>(Operation.class);
+        Map<String, Long> errorCounts = new TreeMap<>();
+        if (enabled) {
+            latencies.forEach((op, histogram) -> {
+                if (histogram.count() > 0) {
+                    operations.put(op, new MetricsSnapshot.OperationStats(
+                            histogram.count(), failures.get(op).sum(),
+                            (long) histogram.mean(), histogram.percentile(50),
+                            histogram.percentile(99), histogram.percentile(99.9),
+                            histogram.max()));
+                }
+            });
+            errors.forEach((type, count) -> errorCounts.put(type, count.sum()));
+        }
+        return new MetricsSnapshot(operations, errorCounts);
+    }
+}
@@ -0,0 +1,29 @@
+package com.libraryapp;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// JFR event committed by an enabled LibraryMetrics for every operation
+// while a flight recording is running.
+@Name("com.libraryapp.Operation")
+@Label("Library Operation")
+@Category("Library")
+@Description("One public Library call and how long it took")
+@StackTrace(false)
+class LibraryOperationEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+
+    @Label("Failure")
+    String failure;
+}
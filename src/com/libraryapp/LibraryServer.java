@@ -0,0 +1,344 @@
+package com.libraryapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// TCP front-end for a Library with one virtual thread per connection.
+//
+// The protocol is line based (UTF-8, '\n' terminated). Fields are separated
+// by tabs, or by single spaces when the line has no tab; SEARCH and SUGGEST
+// take the rest of the line. Every reply is either "OK <n>" followed by n
+// lines, or a single "ERR <message>" line.
+//
+//   LIST [token]                 100 items per page; the OK line ends with the
+//   LOANS [token]                next page token when there is one
+//   SEARCH <text>
+//   SUGGEST <prefix>             up to 10 completions: kind, id, text, borrows
+//   BORROW <member> <isbn>       replies with the loan
+//   RETURN <member> <isbn>
+//   HOLD <member> <isbn>         replies with the place in the hold queue
+//   ADD <admin> <isbn> <title> <author> <genre> <year> [copies]
+//   REMOVE <admin> <isbn>
+//   METRICS
+//   QUIT
+//
+// Clients may pipeline: requests are answered in order, and replies are only
+// written out once every complete request already received has been handled.
+//
+// usage: LibraryServer [--port 7070] [--data dir] [--synthetic books]
+public final class LibraryServer implements Closeable {
+
+    static final int PAGE_SIZE = 100;
+    static final int SUGGESTIONS = 10;
+    private static final int MAX_LINE = 1 << 16;
+    private static final int FLUSH_THRESHOLD = 1 << 15;
+
+    private final Library library;
+    private final ServerSocketChannel server;
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+
+    public LibraryServer(Library library, InetSocketAddress address) throws IOException {
+        this.library = library;
+        this.server = ServerSocketChannel.open();
+        server.bind(address);
+        this.acceptor = Thread.ofPlatform().name("library-acceptor").daemon().unstarted(this::acceptLoop);
+    }
+
+    public LibraryServer start() {
+        acceptor.start();
+        return this;
+    }
+
+    public int port() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    private void acceptLoop() {
+        while (server.isOpen()) {
+            try {
+                SocketChannel channel = server.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                connections.add(channel);
+                Thread.ofVirtual().name("library-conn").start(() -> serve(channel));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            new Connection(channel).run();
+        } catch (IOException e) {
+            // client went away; nothing to report back
+        } finally {
+            connections.remove(channel);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (SocketChannel channel : connections) {
+            channel.close();
+        }
+    }
+
+    private final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+        private final ByteBuffer out = ByteBuffer.allocateDirect(1 << 16);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final StringBuilder reply = new StringBuilder(FLUSH_THRESHOLD * 2);
+        private boolean open = true;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void run() throws IOException {
+            while (open && channel.read(in) >= 0) {
+                in.flip();
+                int start = 0;
+                byte[] bytes = in.array();
+                for (int i = 0; i < in.limit() && open; i++) {
+                    if (bytes[i] == '\n') {
+                        int end = i > start && bytes[i - 1] == '\r' ? i - 1 : i;
+                        handle(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+                        start = i + 1;
+                        if (reply.length() >= FLUSH_THRESHOLD) {
+                            flush();
+                        }
+                    }
+                }
+                in.position(start);
+                in.compact();
+                if (!in.hasRemaining()) {
+                    reply.append("ERR Request line too long\n");
+                    open = false;
+                }
+                // nothing complete left to answer: send what has been buffered
+                flush();
+            }
+            flush();
+        }
+
+        private void handle(String line) {
+            if (line.isBlank()) {
+                return;
+            }
+            try {
+                dispatch(line);
+            } catch (LibraryException e) {
+                error(e.getMessage());
+            } catch (IllegalArgumentException e) {
+                error("Invalid request: " + e.getMessage());
+            } catch (RuntimeException e) {
+                error("Unexpected error: " + e.getMessage());
+            }
+        }
+
+        private void dispatch(String line) throws LibraryException {
+            String separator = line.indexOf('\t') >= 0 ? "\t" : " ";
+            int split = line.indexOf(separator);
+            String command = (split < 0 ? line : line.substring(0, split)).toUpperCase();
+            String rest = split < 0 ? "" : line.substring(split + 1);
+            String[] args = rest.isEmpty() ? new String[0] : rest.split(separator);
+            switch (command) {
+                case "LIST" -> {
+                    Page<LibraryItem> page = library.listItems(optional(args, 0), PAGE_SIZE);
+                    header(page.items().size(), page.nextPageToken());
+                    page.items().forEach(item -> ConsoleRenderer.appendItem(reply, item).append('\n'));
+                }
+                case "LOANS" -> {
+                    Page<LoanRecord> page = library.listLoans(optional(args, 0), PAGE_SIZE);
+                    header(page.items().size(), page.nextPageToken());
+                    page.items().forEach(this::loan);
+                }
+                case "SEARCH" -> {
+                    List<BookItem> found = library.searchBooks(rest);
+                    header(found.size(), null);
+                    found.forEach(book -> ConsoleRenderer.appendItem(reply, book).append('\n'));
+                }
+                case "SUGGEST" -> {
+                    List<Suggestion> suggestions = library.suggest(rest, SUGGESTIONS);
+                    header(suggestions.size(), null);
+                    suggestions.forEach(s -> reply.append(s.kind()).append('\t').append(s.id()).append('\t')
+                            .append(s.text()).append('\t').append(s.popularity()).append('\n'));
+                }
+                case "BORROW" -> {
+                    require(args, 2, "BORROW <member> <isbn>");
+                    switch (library.tryBorrow(args[0], new Isbn(args[1]), LocalDate.now())) {
+                        case LoanRecord record -> {
+                            header(1, null);
+                            loan(record);
+                        }
+                        case LoanStatus status -> error(status.message());
+                    }
+                }
+                case "RETURN" -> {
+                    require(args, 2, "RETURN <member> <isbn>");
+                    if (library.tryReturn(args[0], new Isbn(args[1]), LocalDate.now()) instanceof LoanStatus status) {
+                        error(status.message());
+                    } else {
+                        header(0, null);
+                    }
+                }
+                case "HOLD" -> {
+                    require(args, 2, "HOLD <member> <isbn>");
+                    Isbn isbn = new Isbn(args[1]);
+                    HoldStatus status = library.placeHold(args[0], isbn);
+                    if (status == HoldStatus.QUEUED) {
+                        header(1, null);
+                        reply.append("Position ").append(library.holdPosition(args[0], isbn)).append('\n');
+                    } else {
+                        error(status.name());
+                    }
+                }
+                case "ADD" -> {
+                    if (args.length != 7) {
+                        require(args, 6, "ADD <admin> <isbn> <title> <author> <genre> <year> [copies]");
+                    }
+                    requireAdmin(args[0], "add");
+                    BookItem book = new BookItem(new Isbn(args[1]), args[2], args[3],
+                            Genre.valueOf(args[4].toUpperCase()), Integer.parseInt(args[5]),
+                            args.length == 7 ? Integer.parseInt(args[6]) : 1);
+                    if (library.importBooks(List.of(book)) == 0) {
+                        throw new LibraryException("Book with ISBN " + book.getIsbn().value() + " already exists.");
+                    }
+                    header(0, null);
+                }
+                case "REMOVE" -> {
+                    require(args, 2, "REMOVE <admin> <isbn>");
+                    requireAdmin(args[0], "remove");
+                    if (!library.removeBook(new Isbn(args[1]))) {
+                        throw new NotFoundException("Book not found for ISBN " + args[1]);
+                    }
+                    header(0, null);
+                }
+                case "METRICS" -> {
+                    String text = library.metrics().snapshot().format();
+                    header((int) text.chars().filter(c -> c == '\n').count(), null);
+                    reply.append(text);
+                }
+                case "QUIT" -> {
+                    header(0, null);
+                    open = false;
+                }
+                default -> error("Unknown command: " + command);
+            }
+        }
+
+        private void requireAdmin(String adminId, String action) throws LibraryException {
+            if (!(library.findUserById(adminId) instanceof AdminMember)) {
+                throw new LibraryException("Only admin can " + action + " books.");
+            }
+        }
+
+        private void header(int lines, String nextPageToken) {
+            reply.append("OK ").append(lines);
+            if (nextPageToken != null) {
+                reply.append(' ').append(nextPageToken);
+            }
+            reply.append('\n');
+        }
+
+        private void loan(LoanRecord record) {
+            ConsoleRenderer.appendLoan(reply, record).append(" - Due ").append(record.dueDate()).append('\n');
+        }
+
+        private void error(String message) {
+            reply.append("ERR ").append(message.replace('\n', ' ')).append('\n');
+        }
+
+        private void flush() throws IOException {
+            if (reply.isEmpty()) {
+                return;
+            }
+            CharBuffer chars = CharBuffer.wrap(reply);
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, out, true);
+                out.flip();
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                out.clear();
+            } while (result.isOverflow());
+            encoder.reset();
+            reply.setLength(0);
+        }
+    }
+
+    private static String optional(String[] args, int index) {
+        return index < args.length && !args[index].isEmpty() ? args[index] : null;
+    }
+
+    private static void require(String[] args, int count, String usage) {
+        if (args.length != count) {
+            throw new IllegalArgumentException("usage: " + usage);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String port = "7070";
+        String data = null;
+        int synthetic = -1;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port" -> port = args[i + 1];
+                case "--data" -> data = args[i + 1];
+                case "--synthetic" -> synthetic = Integer.parseInt(args[i + 1].replace("_", ""));
+                default -> throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+        }
+        int books = synthetic;
+        Supplier<Library> seed = () -> books >= 0
+                ? SyntheticCatalog.create(books, Math.max(1000, books / 10))
+                : Data.createLibrary();
+        InetSocketAddress address = new InetSocketAddress(Integer.parseInt(port));
+        LibraryStore store = data == null ? null : LibraryStore.open(Path.of(data), seed);
+        Library library = store == null ? seed.get() : store.library();
+        library.setMetrics(LibraryMetrics.create());
+        LibraryServer server = new LibraryServer(library, address).start();
+        // SIGTERM and Ctrl-C run shutdown hooks but no finally blocks, so the
+        // hook stops taking requests and then snapshots and closes the store
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutDown(server, store), "library-shutdown"));
+        System.out.println("Listening on port " + server.port());
+        server.acceptor.join();
+    }
+
+    private static void shutDown(LibraryServer server, LibraryStore store) {
+        try {
+            server.close();
+            if (store != null) {
+                try {
+                    store.checkpoint();
+                } finally {
+                    store.close();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Shutdown failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,496 @@
+package com.libraryapp;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Headless workload simulator for Library. Builds a synthetic catalog, then
+// runs a borrow/return/search/add/remove mix on several threads and reports
+// throughput, latency percentiles per operation, how each operation turned
+// out, and whether the library is still consistent afterwards.
+//
+// Thread t borrows as the members t, t + threads, ... only, and returns only
+// loans it made itself, so every return in a generated run must succeed.
+// Books are picked by Zipf rank (book 0 is the most popular); adds create new
+// synthetic books and removes retire the oldest of those again, so the
+// catalog size stays roughly steady.
+//
+// --record writes every operation to a trace file in the order it took
+// effect: a listener stamps each change while the library makes it, and ops
+// that changed nothing are stamped when they return. --replay runs a trace
+// again on the same catalog with the same thread split; interleavings differ
+// between runs, so a replayed borrow may find a copy taken that was free when
+// it was recorded. Replaying with --threads 1 runs the whole trace on one
+// thread in recorded order instead. The trace keeps every op's outcome, and a
+// replay reports how many turned out differently; a failed borrow has no
+// exact place in the order, so even a serial replay can differ slightly.
+//
+// usage: LibrarySimulator [--books 100000] [--members n] [--threads n]
+//        [--ops 200000] [--zipf 1.0] [--seed 42]
+//        [--mix borrow=40,return=35,search=20,add=3,remove=2]
+//        [--record trace.txt | --replay trace.txt]
+public final class LibrarySimulator {
+
+    enum Kind { BORROW, RETURN, SEARCH, ADD, REMOVE }
+
+    // one operation as run and traced; fields that do not apply are null or -1
+    record Op(Kind kind, String memberId, Isbn isbn, String terms, int bookIndex) {
+
+        String toTrace(int thread) {
+            return thread + " " + kind + " " + switch (kind) {
+                case BORROW, RETURN -> memberId + " " + isbn.value();
+                case SEARCH -> terms;
+                case ADD -> Integer.toString(bookIndex);
+                case REMOVE -> isbn.value();
+            };
+        }
+
+        static Op parse(String[] fields) {
+            Kind kind = Kind.valueOf(fields[1]);
+            return switch (kind) {
+                case BORROW, RETURN -> new Op(kind, fields[2], new Isbn(fields[3]), null, -1);
+                case SEARCH -> new Op(kind, null, null, fields[2] + (fields.length > 3 ? " " + fields[3] : ""), -1);
+                case ADD -> new Op(kind, null, null, null, Integer.parseInt(fields[2]));
+                case REMOVE -> new Op(kind, null, new Isbn(fields[2]), null, -1);
+            };
+        }
+    }
+
+    // a traced op and what came of it
+    record Step(Op op, String outcome) {
+
+        String toTrace(int thread) {
+            return op.toTrace(thread) + " " + outcome;
+        }
+
+        static Step parse(String[] fields) {
+            return new Step(Op.parse(Arrays.copyOf(fields, fields.length - 1)), fields[fields.length - 1]);
+        }
+    }
+
+    // per-thread state: its random stream, the loans it holds, what it ran
+    private final class Worker {
+        final int thread;
+        final SplittableRandom random;
+        final List<Step> script; // replay input, or null when generating
+        final List<Step> trace;  // ops run, when recording
+        final List<Long> order;  // and the sequence each took effect at
+        final List<LoanRecord> held = new ArrayList<>();
+        final Map<Integer, Integer> heldIndex = new HashMap<>(); // loan id to position in held
+        final Map<Kind, Map<String, Long>> outcomes = new EnumMap<>(Kind.class);
+        final List<String> violations = new ArrayList<>();
+        long stamp = -1; // set by the listener while an op runs
+        int diverged;    // replayed ops whose outcome differs from the trace
+
+        Worker(int thread, List<Step> script, boolean recording) {
+            this.thread = thread;
+            this.random = new SplittableRandom(seed * 31 + thread);
+            this.script = script;
+            this.trace = recording ? new ArrayList<>() : null;
+            this.order = recording ? new ArrayList<>() : null;
+        }
+
+        void run(int ops) {
+            int count = script != null ? script.size() : ops;
+            for (int i = 0; i < count; i++) {
+                Op op = script != null ? script.get(i).op() : next();
+                long start = System.nanoTime();
+                String outcome = execute(op);
+                if (trace != null) {
+                    trace.add(new Step(op, outcome));
+                    order.add(stamp >= 0 ? stamp : sequence.getAndIncrement());
+                    stamp = -1;
+                }
+                latencies.get(op.kind()).record(System.nanoTime() - start);
+                outcomes.computeIfAbsent(op.kind(), k -> new TreeMap<>()).merge(outcome, 1L, Long::sum);
+                if (script != null && !outcome.equals(script.get(i).outcome())) {
+                    diverged++;
+                }
+                if (script == null && op.kind() == Kind.RETURN && !outcome.equals("OK")) {
+                    violations.add("return of a held loan failed: " + op.toTrace(thread) + " -> " + outcome);
+                }
+            }
+        }
+
+        private Op next() {
+            int roll = random.nextInt(mixTotal);
+            Kind kind = Kind.BORROW;
+            for (Kind k : Kind.values()) {
+                if (roll < mix[k.ordinal()]) {
+                    kind = k;
+                    break;
+                }
+                roll -= mix[k.ordinal()];
+            }
+            switch (kind) {
+                case RETURN -> {
+                    if (held.isEmpty()) {
+                        return borrow();
+                    }
+                    LoanRecord loan = held.get(random.nextInt(held.size()));
+                    return new Op(Kind.RETURN, loan.memberId(), loan.isbn(), null, -1);
+                }
+                case SEARCH -> {
+                    return new Op(Kind.SEARCH, null, null, SyntheticCatalog.searchTerm(random) + " "
+                            + SyntheticCatalog.searchTerm(random), -1);
+                }
+                case ADD -> {
+                    return new Op(Kind.ADD, null, null, null, nextBook.getAndIncrement());
+                }
+                case REMOVE -> {
+                    Isbn oldest = added.poll();
+                    if (oldest == null) {
+                        return borrow();
+                    }
+                    return new Op(Kind.REMOVE, null, oldest, null, -1);
+                }
+                default -> {
+                    return borrow();
+                }
+            }
+        }
+
+        private Op borrow() {
+            int slots = (members - thread + threads - 1) / threads;
+            String member = SyntheticCatalog.memberId(thread + random.nextInt(slots) * threads);
+            int book = zipf != null ? zipf.next(random) : random.nextInt(books);
+            return new Op(Kind.BORROW, member, SyntheticCatalog.isbn(book), null, -1);
+        }
+
+        private String execute(Op op) {
+            switch (op.kind()) {
+                case BORROW -> {
+                    LoanOutcome outcome = library.tryBorrow(op.memberId(), op.isbn(), today);
+                    if (outcome instanceof LoanRecord loan) {
+                        heldIndex.put(loan.loanId(), held.size());
+                        held.add(loan);
+                        return "OK";
+                    }
+                    return ((LoanStatus) outcome).name();
+                }
+                case RETURN -> {
+                    LoanOutcome outcome = library.tryReturn(op.memberId(), op.isbn(), today);
+                    if (outcome instanceof LoanRecord loan) {
+                        release(loan.loanId());
+                        return "OK";
+                    }
+                    return ((LoanStatus) outcome).name();
+                }
+                case SEARCH -> {
+                    return library.searchBooks(op.terms()).isEmpty() ? "NO_MATCH" : "OK";
+                }
+                case ADD -> {
+                    // importBooks rather than addBook, which prints to the console
+                    BookItem book = SyntheticCatalog.book(op.bookIndex());
+                    if (library.importBooks(List.of(book)) == 0) {
+                        return "DUPLICATE";
+                    }
+                    if (script == null) {
+                        added.add(book.getIsbn());
+                    }
+                    return "OK";
+                }
+                default -> {
+                    try {
+                        return library.removeBook(op.isbn()) ? "OK" : "UNKNOWN_BOOK";
+                    } catch (LibraryException e) {
+                        if (script == null) {
+                            added.add(op.isbn()); // still on loan; retire it later
+                        }
+                        return "ON_LOAN";
+                    }
+                }
+            }
+        }
+
+        // swap-removes a returned loan from held
+        private void release(int loanId) {
+            Integer index = heldIndex.remove(loanId);
+            if (index != null) {
+                LoanRecord last = held.remove(held.size() - 1);
+                if (index < held.size()) {
+                    held.set(index, last);
+                    heldIndex.put(last.loanId(), index);
+                }
+            }
+        }
+    }
+
+    private final Library library;
+    private final int books;
+    private final int members;
+    private final int threads;
+    private final long seed;
+    private final ZipfGenerator zipf;
+    private final int[] mix = new int[Kind.values().length];
+    private final int mixTotal;
+    private final LocalDate today = LocalDate.now();
+    private final Map<Kind, LatencyHistogram> latencies = new EnumMap<>(Kind.class);
+    private final AtomicInteger nextBook;
+    private final AtomicLong sequence = new AtomicLong();
+    private final ThreadLocal<Worker> current = new ThreadLocal<>();
+    // added books not yet removed, oldest first
+    private final ConcurrentLinkedQueue<Isbn> added = new ConcurrentLinkedQueue<>();
+
+    LibrarySimulator(int books, int members, int threads, long seed, double zipfExponent, String mix) {
+        if (members < threads) {
+            throw new IllegalArgumentException("Need at least one member per thread.");
+        }
+        this.books = books;
+        this.members = members;
+        this.threads = threads;
+        this.seed = seed;
+        this.zipf = zipfExponent > 0 ? new ZipfGenerator(books, zipfExponent) : null;
+        this.nextBook = new AtomicInteger(books);
+        for (String part : mix.split(",")) {
+            String[] pair = part.split("=");
+            this.mix[Kind.valueOf(pair[0].trim().toUpperCase()).ordinal()] = Integer.parseInt(pair[1].trim());
+        }
+        int total = 0;
+        for (int weight : this.mix) {
+            total += weight;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("The operation mix is empty.");
+        }
+        this.mixTotal = total;
+        for (Kind kind : Kind.values()) {
+            latencies.put(kind, new LatencyHistogram());
+        }
+        this.library = SyntheticCatalog.create(books, members);
+        // listeners run on the mutating thread, inside the library's ordering
+        // for the copy or title they touch
+        library.addListener(new LibraryListener() {
+            @Override
+            public void onBookAdded(BookItem book) {
+                stamp();
+            }
+
+            @Override
+            public void onBookRemoved(Isbn isbn) {
+                stamp();
+            }
+
+            @Override
+            public void onBorrowed(LoanRecord record) {
+                stamp();
+            }
+
+            @Override
+            public void onReturned(LoanRecord record, LocalDate returnDate) {
+                stamp();
+            }
+        });
+    }
+
+    private void stamp() {
+        Worker worker = current.get();
+        if (worker != null && worker.trace != null) {
+            worker.stamp = sequence.getAndIncrement();
+        }
+    }
+
+    // runs ops spread over the threads, or the given per-thread scripts
+    private List<Worker> run(int ops, List<List<Step>> scripts, boolean recording) throws InterruptedException {
+        List<Worker> workers = new ArrayList<>();
+        Thread[] running = new Thread[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            Worker worker = new Worker(t, scripts != null ? scripts.get(t) : null, recording);
+            int share = ops / threads + (t < ops % threads ? 1 : 0);
+            workers.add(worker);
+            running[t] = new Thread(() -> {
+                try {
+                    current.set(worker);
+                    start.await();
+                    worker.run(share);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "simulator-" + t);
+            running[t].start();
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread thread : running) {
+            thread.join();
+        }
+        report(workers, (System.nanoTime() - started) / 1e9);
+        return workers;
+    }
+
+    private void report(List<Worker> workers, double elapsed) {
+        long total = 0;
+        System.out.printf("%-8s %12s %10s %10s %10s %10s  %s%n", "op", "calls", "p50 us", "p99 us", "p99.9 us", "max us", "outcomes");
+        for (Kind kind : Kind.values()) {
+            LatencyHistogram histogram = latencies.get(kind);
+            Map<String, Long> outcomes = new TreeMap<>();
+            for (Worker worker : workers) {
+                worker.outcomes.getOrDefault(kind, Map.of()).forEach((k, v) -> outcomes.merge(k, v, Long::sum));
+            }
+            total += histogram.count();
+            System.out.printf("%-8s %12d %10.1f %10.1f %10.1f %10.1f  %s%n", kind, histogram.count(),
+                    histogram.percentile(50) / 1e3, histogram.percentile(99) / 1e3,
+                    histogram.percentile(99.9) / 1e3, histogram.max() / 1e3, outcomes);
+        }
+        System.out.printf("%,d operations in %.2f s: %,.0f ops/s on %d threads%n", total, elapsed, total / elapsed, threads);
+    }
+
+    // Checks the library against itself and against the loans the workers
+    // hold. Returns the violations found; empty means consistent.
+    private List<String> verify(List<Worker> workers) {
+        List<String> violations = new ArrayList<>();
+        workers.forEach(w -> violations.addAll(w.violations));
+
+        Set<Integer> loanIds = new HashSet<>();
+        Set<String> copies = new HashSet<>();
+        Set<String> memberBooks = new HashSet<>();
+        Map<Isbn, Integer> lent = new HashMap<>();
+        List<LoanRecord> loans = library.streamLoans().toList();
+        for (LoanRecord loan : loans) {
+            if (!loanIds.add(loan.loanId())) {
+                violations.add("loan id used twice: " + loan);
+            }
+            if (!copies.add(loan.isbn().value() + "#" + loan.copyNumber())) {
+                violations.add("copy lent twice: " + loan);
+            }
+            if (!memberBooks.add(loan.memberId() + " " + loan.isbn().value())) {
+                violations.add("member holds the same book twice: " + loan);
+            }
+            lent.merge(loan.isbn(), 1, Integer::sum);
+        }
+
+        try (CatalogSnapshot snapshot = library.snapshot()) {
+            snapshot.items().forEach(item -> {
+                if (item instanceof BookItem book) {
+                    int out = lent.getOrDefault(book.getIsbn(), 0);
+                    if (out > snapshot.copies(book) || snapshot.availableCopies(book) != snapshot.copies(book) - out) {
+                        violations.add("copy counts disagree with loans for " + book.getIsbn() + ": copies "
+                                + snapshot.copies(book) + ", available " + snapshot.availableCopies(book) + ", on loan " + out);
+                    }
+                    lent.remove(book.getIsbn());
+                }
+            });
+        }
+        lent.keySet().forEach(isbn -> violations.add("loan on a book not in the catalog: " + isbn));
+
+        Set<String> held = new HashSet<>();
+        for (Worker worker : workers) {
+            for (LoanRecord loan : worker.held) {
+                held.add(loan.memberId() + " " + loan.isbn().value());
+            }
+        }
+        if (!held.equals(memberBooks)) {
+            violations.add("library has " + loans.size() + " active loans but the simulator holds " + held.size());
+        }
+        return violations;
+    }
+
+    private static void writeTrace(Path file, int books, int members, List<Worker> workers) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write("# LibrarySimulator trace books=" + books + " members=" + members + " threads=" + workers.size());
+            out.newLine();
+            // merge the threads' ops back into the order they finished in
+            int[] next = new int[workers.size()];
+            while (true) {
+                Worker first = null;
+                for (Worker worker : workers) {
+                    int i = next[worker.thread];
+                    if (i < worker.trace.size() && (first == null
+                            || worker.order.get(i) < first.order.get(next[first.thread]))) {
+                        first = worker;
+                    }
+                }
+                if (first == null) {
+                    break;
+                }
+                out.write(first.trace.get(next[first.thread]++).toTrace(first.thread));
+                out.newLine();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        List<List<Step>> scripts = null;
+        if (options.containsKey("replay")) {
+            List<String> lines = Files.readAllLines(Path.of(options.get("replay")));
+            if (lines.isEmpty() || !lines.get(0).startsWith("# LibrarySimulator trace ")) {
+                throw new IllegalArgumentException("Not a simulator trace: " + options.get("replay"));
+            }
+            boolean serial = "1".equals(options.get("threads"));
+            // the header fixes the catalog and thread split of the recording
+            for (String setting : lines.get(0).substring("# LibrarySimulator trace ".length()).split(" ")) {
+                String[] pair = setting.split("=");
+                options.put(pair[0], pair[1]);
+            }
+            if (serial) {
+                options.put("threads", "1");
+            }
+            int threads = Integer.parseInt(options.get("threads"));
+            scripts = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                scripts.add(new ArrayList<>());
+            }
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split(" ");
+                scripts.get(serial ? 0 : Integer.parseInt(fields[0])).add(Step.parse(fields));
+            }
+        }
+        int books = Integer.parseInt(options.getOrDefault("books", "100000").replace("_", ""));
+        int members = Integer.parseInt(options.getOrDefault("members", Integer.toString(Math.max(1000, books / 10))).replace("_", ""));
+        int threads = Integer.parseInt(options.getOrDefault("threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        int ops = Integer.parseInt(options.getOrDefault("ops", "200000").replace("_", ""));
+        double zipf = Double.parseDouble(options.getOrDefault("zipf", "1.0"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        String mix = options.getOrDefault("mix", "borrow=40,return=35,search=20,add=3,remove=2");
+
+        System.out.printf("Building catalog of %,d books and %,d members...%n", books, members);
+        LibrarySimulator simulator = new LibrarySimulator(books, members, threads, seed, zipf, mix);
+        if (scripts != null) {
+            System.out.printf("Replaying %s on %d threads%n", options.get("replay"), threads);
+        } else {
+            System.out.printf("Running %,d operations on %d threads (%s, zipf %s)%n", ops, threads, mix, zipf);
+        }
+        List<Worker> workers = simulator.run(ops, scripts, options.containsKey("record"));
+        if (options.containsKey("record")) {
+            writeTrace(Path.of(options.get("record")), books, members, workers);
+            System.out.println("Trace written to " + options.get("record"));
+        }
+        if (scripts != null) {
+            int diverged = workers.stream().mapToInt(w -> w.diverged).sum();
+            int replayed = scripts.stream().mapToInt(List::size).sum();
+            System.out.printf("%,d of %,d replayed operations turned out differently than recorded%n", diverged, replayed);
+        }
+        List<String> violations = simulator.verify(workers);
+        if (violations.isEmpty()) {
+            System.out.println("Invariants hold: loans unique per copy and member, copy counts match loans");
+        } else {
+            violations.stream().limit(20).forEach(v -> System.out.println("VIOLATION " + v));
+            System.out.println(violations.size() + " invariant violations");
+            System.exit(1);
+        }
+    }
+}
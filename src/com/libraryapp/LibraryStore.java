@@ -0,0 +1,521 @@
+package com.libraryapp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Durable Library: every mutation is appended to a WriteAheadLog, snapshots
+// are written periodically, and open() rebuilds state from the latest
+// snapshot plus the log segments written after it. A mutating Library call
+// returns only once its records are fsynced; concurrent calls share one
+// fsync, so each waits up to the commit interval plus one fsync.
+public final class LibraryStore implements LibraryListener, Closeable {
+
+    private static final int SNAPSHOT_MAGIC = 0x4C494253; // "LIBS"
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private static final byte BOOK_ADDED = 1;
+    private static final byte BOOK_REMOVED = 2;
+    private static final byte USER_ADDED = 3;
+    private static final byte BORROWED = 4;
+    private static final byte RETURNED = 5;
+    private static final byte COPIES_ADDED = 6;
+    private static final byte HOLD_PLACED = 7;
+    private static final byte HOLD_CANCELLED = 8;
+    private static final byte RESERVED = 9;
+    private static final byte RESERVATION_RELEASED = 10;
+
+    private static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final long DEFAULT_COMMIT_MILLIS = 2;
+    private static final long DEFAULT_CHECKPOINT_SECONDS = 60;
+
+    private final Path dir;
+    private final Library library;
+    private final WriteAheadLog log;
+    private final ScheduledExecutorService checkpoints;
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+    // sequence number of the last record each thread appended and has not
+    // yet waited for; the wait happens once its Library call has unlocked
+    private final ThreadLocal<long[]> unsynced = ThreadLocal.withInitial(() -> new long[1]);
+
+    private LibraryStore(Path dir, Library library, WriteAheadLog log, long checkpointSeconds) {
+        this.dir = dir;
+        this.library = library;
+        this.log = log;
+        this.checkpoints = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "library-checkpoint");
+            t.setDaemon(true);
+            return t;
+        });
+        checkpoints.scheduleWithFixedDelay(this::checkpointQuietly,
+                checkpointSeconds, checkpointSeconds, TimeUnit.SECONDS);
+    }
+
+    public static LibraryStore open(Path dir, Supplier<Library> seed) throws IOException {
+        return open(dir, seed, DEFAULT_SEGMENT_BYTES, DEFAULT_COMMIT_MILLIS, DEFAULT_CHECKPOINT_SECONDS);
+    }
+
+    public static LibraryStore open(Path dir, Supplier<Library> seed, long segmentBytes,
+            long commitMillis, long checkpointSeconds) throws IOException {
+        Files.createDirectories(dir);
+        Optional<Path> snapshot = latestSnapshot(dir);
+        WriteAheadLog log = new WriteAheadLog(dir, segmentBytes, commitMillis);
+
+        Library library;
+        long replayFrom;
+        if (snapshot.isPresent()) {
+            library = readSnapshot(snapshot.get());
+            replayFrom = snapshotIndex(snapshot.get());
+        } else {
+            library = seed.get();
+            replayFrom = 0;
+        }
+        log.replay(replayFrom, event -> apply(library, event));
+
+        LibraryStore store = new LibraryStore(dir, library, log, checkpointSeconds);
+        library.addListener(store);
+        if (snapshot.isEmpty()) {
+            store.checkpoint(); // make the seed data durable
+        }
+        return store;
+    }
+
+    public Library library() {
+        return library;
+    }
+
+    // blocks until every mutation so far is on disk
+    public void sync() throws IOException {
+        log.sync();
+    }
+
+    public void checkpoint() throws IOException {
+        checkpointLock.lock();
+        try {
+            // roll and capture with mutations excluded, so the snapshot covers
+            // exactly the segments before the new one
+            Image image = library.withCatalogLocked(() -> {
+                try {
+                    // copy counts are read here too: addCopies after the roll
+                    // is logged in the new segment and must not be in the image
+                    List<LibraryItem> items = new ArrayList<>(library.allItems());
+                    int[] copies = new int[items.size()];
+                    for (int i = 0; i < copies.length; i++) {
+                        copies[i] = ((BookItem) items.get(i)).getCopies();
+                    }
+                    return new Image(log.roll(), library.lastLoanId(), items, copies,
+                            new ArrayList<>(library.allUsers()),
+                            new ArrayList<>(library.activeLoans()),
+                            library.history().contents(),
+                            library.holdQueues(),
+                            library.allReservations());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writeSnapshot(image);
+            log.deleteSegmentsBefore(image.segment());
+            deleteSnapshotsBefore(image.segment());
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        checkpoints.shutdownNow();
+        library.removeListener(this);
+        log.close();
+    }
+
+    @Override
+    public void onCallCompleted() {
+        long[] unsynced = this.unsynced.get();
+        long seq = unsynced[0];
+        if (seq == 0) {
+            return;
+        }
+        unsynced[0] = 0;
+        try {
+            log.awaitDurable(seq);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Change was applied but could not be logged", e);
+        }
+    }
+
+    @Override
+    public void onBookAdded(BookItem book) {
+        append(out -> {
+            out.writeByte(BOOK_ADDED);
+            writeBook(out, book, book.getCopies());
+        });
+    }
+
+    @Override
+    public void onCopiesAdded(BookItem book, int added, LocalDate on) {
+        append(out -> {
+            out.writeByte(COPIES_ADDED);
+            out.writeUTF(book.getIsbn().value());
+            out.writeInt(added);
+            out.writeLong(on.toEpochDay());
+        });
+    }
+
+    @Override
+    public void onBookRemoved(Isbn isbn) {
+        append(out -> {
+            out.writeByte(BOOK_REMOVED);
+            out.writeUTF(isbn.value());
+        });
+    }
+
+    @Override
+    public void onUserAdded(LibraryUser user) {
+        append(out -> {
+            out.writeByte(USER_ADDED);
+            writeUser(out, user);
+        });
+    }
+
+    @Override
+    public void onBorrowed(LoanRecord record) {
+        append(out -> {
+            out.writeByte(BORROWED);
+            writeLoan(out, record);
+        });
+    }
+
+    @Override
+    public void onReturned(LoanRecord record, LocalDate returnDate) {
+        append(out -> {
+            out.writeByte(RETURNED);
+            out.writeUTF(record.memberId());
+            out.writeUTF(record.isbn().value());
+            out.writeLong(returnDate.toEpochDay());
+        });
+    }
+
+    @Override
+    public void onHoldPlaced(Isbn isbn, String memberId) {
+        append(out -> {
+            out.writeByte(HOLD_PLACED);
+            out.writeUTF(isbn.value());
+            out.writeUTF(memberId);
+        });
+    }
+
+    @Override
+    public void onHoldCancelled(Isbn isbn, String memberId) {
+        append(out -> {
+            out.writeByte(HOLD_CANCELLED);
+            out.writeUTF(isbn.value());
+            out.writeUTF(memberId);
+        });
+    }
+
+    @Override
+    public void onReserved(Reservation reservation) {
+        append(out -> {
+            out.writeByte(RESERVED);
+            writeReservation(out, reservation);
+        });
+    }
+
+    // an expired or cancelled reservation; a fulfilled one ends with the
+    // BORROWED record of its loan
+    @Override
+    public void onReservationReleased(Reservation reservation) {
+        append(out -> {
+            out.writeByte(RESERVATION_RELEASED);
+            out.writeUTF(reservation.isbn().value());
+            out.writeUTF(reservation.memberId());
+        });
+    }
+
+    private interface Encoder {
+        void write(DataOutput out) throws IOException;
+    }
+
+    private void append(Encoder encoder) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try {
+            encoder.write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        unsynced.get()[0] = log.append(bytes.toByteArray());
+    }
+
+    private static void apply(Library library, ByteBuffer event) {
+        try {
+            DataInput in = new DataInputStream(new ByteBufferInput(event));
+            switch (in.readByte()) {
+                case BOOK_ADDED -> library.addItems(readBook(in));
+                // the restock date is not needed: copies handed to waiting
+                // members were logged as RESERVED records of their own
+                case COPIES_ADDED -> library.restoreCopies(new Isbn(in.readUTF()), in.readInt());
+                case BOOK_REMOVED -> library.restoreRemoval(new Isbn(in.readUTF()));
+                case USER_ADDED -> library.addUser(readUser(in));
+                case BORROWED -> library.restoreLoan(readLoan(in));
+                case RETURNED -> library.restoreReturn(in.readUTF(), new Isbn(in.readUTF()),
+                        LocalDate.ofEpochDay(in.readLong()));
+                case HOLD_PLACED -> library.restoreHold(new Isbn(in.readUTF()), in.readUTF());
+                case HOLD_CANCELLED -> library.restoreHoldCancelled(new Isbn(in.readUTF()), in.readUTF());
+                case RESERVED -> library.restoreReservation(readReservation(in));
+                case RESERVATION_RELEASED -> library.restoreReservationReleased(new Isbn(in.readUTF()), in.readUTF());
+                default -> throw new IOException("Unknown log record type");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Checkpoint failed: " + e.getMessage());
+        }
+    }
+
+    private record Image(long segment, int lastLoanId, List<LibraryItem> items, int[] copies,
+            List<LibraryUser> users, List<LoanRecord> loans, LoanArchive.Contents history,
+            Map<Isbn, List<String>> holdQueues, List<Reservation> reservations) {
+    }
+
+    private void writeSnapshot(Image image) throws IOException {
+        Path target = snapshotPath(dir, image.segment());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(image.lastLoanId());
+            out.writeInt(image.items().size());
+            for (int i = 0; i < image.items().size(); i++) {
+                writeBook(out, (BookItem) image.items().get(i), image.copies()[i]);
+            }
+            out.writeInt(image.users().size());
+            for (LibraryUser user : image.users()) {
+                writeUser(out, user);
+            }
+            out.writeInt(image.loans().size());
+            for (LoanRecord record : image.loans()) {
+                writeLoan(out, record);
+            }
+            image.history().writeTo(out);
+            out.writeInt(image.holdQueues().size());
+            for (Map.Entry<Isbn, List<String>> queue : image.holdQueues().entrySet()) {
+                out.writeUTF(queue.getKey().value());
+                out.writeInt(queue.getValue().size());
+                for (String memberId : queue.getValue()) {
+                    out.writeUTF(memberId);
+                }
+            }
+            out.writeInt(image.reservations().size());
+            for (Reservation reservation : image.reservations()) {
+                writeReservation(out, reservation);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        // the rename must be durable before the segments it replaces are deleted
+        WriteAheadLog.syncDirectory(dir);
+    }
+
+    private static Library readSnapshot(Path snapshot) throws IOException {
+        try (InputStream file = Files.newInputStream(snapshot)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(file, 64 * 1024));
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a library snapshot: " + snapshot);
+            }
+            int lastLoanId = in.readInt();
+            List<LibraryItem> items = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                items.add(readBook(in));
+            }
+            List<LibraryUser> users = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                users.add(readUser(in));
+            }
+            List<LoanRecord> loans = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                loans.add(readLoan(in));
+            }
+            Library library = new Library(items, loans, users);
+            library.advanceLoanIds(lastLoanId);
+            library.history().restore(in);
+            library.refreshPopularity();
+            for (int i = in.readInt(); i > 0; i--) {
+                Isbn isbn = new Isbn(in.readUTF());
+                for (int n = in.readInt(); n > 0; n--) {
+                    library.restoreHold(isbn, in.readUTF());
+                }
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                library.restoreReservation(readReservation(in));
+            }
+            return library;
+        }
+    }
+
+    private static void writeBook(DataOutput out, BookItem book, int copies) throws IOException {
+        out.writeUTF(book.getIsbn().value());
+        out.writeUTF(book.getTitle());
+        out.writeUTF(book.getAuthor());
+        out.writeUTF(book.getGenre().name());
+        out.writeInt(book.getYear());
+        out.writeInt(copies);
+    }
+
+    // which copies are lent is not stored; the Library derives it from the
+    // active loans, and copies set aside for holds from the reservations
+    private static BookItem readBook(DataInput in) throws IOException {
+        return new BookItem(new Isbn(in.readUTF()), in.readUTF(), in.readUTF(),
+                Genre.valueOf(in.readUTF()), in.readInt(), in.readInt());
+    }
+
+    private static void writeUser(DataOutput out, LibraryUser user) throws IOException {
+        switch (user) {
+            case AdminMember admin -> {
+                out.writeByte('A');
+                out.writeUTF(admin.getId());
+                out.writeUTF(admin.getName());
+            }
+            case StudentMember student -> {
+                out.writeByte('S');
+                out.writeUTF(student.getId());
+                out.writeUTF(student.getName());
+                out.writeUTF(student.getCourse());
+            }
+            case StaffMember staff -> {
+                out.writeByte('T');
+                out.writeUTF(staff.getId());
+                out.writeUTF(staff.getName());
+                out.writeUTF(staff.getDepartment());
+            }
+            default -> throw new IOException("Cannot persist user type " + user.getClass().getName());
+        }
+    }
+
+    private static LibraryUser readUser(DataInput in) throws IOException {
+        return switch (in.readByte()) {
+            case 'A' -> new AdminMember(in.readUTF(), in.readUTF());
+            case 'S' -> new StudentMember(in.readUTF(), in.readUTF(), in.readUTF());
+            case 'T' -> new StaffMember(in.readUTF(), in.readUTF(), in.readUTF());
+            default -> throw new IOException("Unknown user type in log");
+        };
+    }
+
+    private static void writeLoan(DataOutput out, LoanRecord record) throws IOException {
+        out.writeInt(record.loanId());
+        out.writeUTF(record.isbn().value());
+        out.writeUTF(record.memberId());
+        out.writeLong(record.borrowDate().toEpochDay());
+        out.writeLong(record.dueDate().toEpochDay());
+        out.writeInt(record.copyNumber());
+    }
+
+    private static LoanRecord readLoan(DataInput in) throws IOException {
+        return new LoanRecord(in.readInt(), new Isbn(in.readUTF()), in.readUTF(),
+                LocalDate.ofEpochDay(in.readLong()), LocalDate.ofEpochDay(in.readLong()), in.readInt());
+    }
+
+    private static void writeReservation(DataOutput out, Reservation reservation) throws IOException {
+        out.writeUTF(reservation.isbn().value());
+        out.writeUTF(reservation.memberId());
+        out.writeInt(reservation.copyNumber());
+        out.writeLong(reservation.readySince().toEpochDay());
+        out.writeLong(reservation.pickupBy().toEpochDay());
+    }
+
+    private static Reservation readReservation(DataInput in) throws IOException {
+        return new Reservation(new Isbn(in.readUTF()), in.readUTF(), in.readInt(),
+                LocalDate.ofEpochDay(in.readLong()), LocalDate.ofEpochDay(in.readLong()));
+    }
+
+    private static Optional<Path> latestSnapshot(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(LibraryStore::isSnapshot)
+                    .max(Comparator.comparingLong(LibraryStore::snapshotIndex));
+        }
+    }
+
+    private void deleteSnapshotsBefore(long segment) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files.filter(LibraryStore::isSnapshot)::iterator) {
+                if (snapshotIndex(p) < segment) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+    }
+
+    private static boolean isSnapshot(Path p) {
+        String name = p.getFileName().toString();
+        return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+    }
+
+    private static long snapshotIndex(Path p) {
+        String name = p.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+
+    private static Path snapshotPath(Path dir, long segment) {
+        return dir.resolve(String.format("%s%016d%s", SNAPSHOT_PREFIX, segment, SNAPSHOT_SUFFIX));
+    }
+
+    private static final class ByteBufferInput extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
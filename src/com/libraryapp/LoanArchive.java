@@ -0,0 +1,690 @@
+package com.libraryapp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Closed loans partitioned by the month they were returned. The newest months
+// take appends; older months are sealed into immutable segments of deflated
+// blocks. Each segment keeps a member -> blocks index and the sorted borrow
+// days per ISBN uncompressed, so history lookups only inflate the blocks that
+// hold the member and borrow counts never inflate anything.
+public final class LoanArchive {
+
+    private static final int OPEN_MONTHS = 2;
+    private static final int SHARDS = 16; // power of two
+    private static final int BLOCK_SIZE = 256;
+    private static final int RECORD_BYTES = 32;
+
+    private static final Comparator<ClosedLoan> BY_RETURN_DATE =
+            Comparator.comparing(ClosedLoan::returnDate).thenComparingInt(c -> c.loan().loanId());
+
+    private final ConcurrentSkipListMap<YearMonth, Month> months = new ConcurrentSkipListMap<>();
+    private final AtomicReference<YearMonth> newest = new AtomicReference<>();
+    private final AtomicLong size = new AtomicLong();
+    private final ReentrantLock sealLock = new ReentrantLock();
+
+    public void archive(LoanRecord record, LocalDate returnDate) {
+        ClosedLoan closed = new ClosedLoan(Objects.requireNonNull(record), Objects.requireNonNull(returnDate));
+        YearMonth month = YearMonth.from(returnDate);
+        months.computeIfAbsent(month, Month::new).add(closed);
+        size.incrementAndGet();
+        advance(month);
+    }
+
+    // Once returns reach a new month, months that fell out of the open window
+    // are sealed on a pool thread rather than the returning one.
+    private void advance(YearMonth month) {
+        YearMonth seen = newest.get();
+        while (seen == null || month.isAfter(seen)) {
+            if (newest.compareAndSet(seen, month)) {
+                if (seen != null) {
+                    YearMonth cutoff = month.minusMonths(OPEN_MONTHS - 1);
+                    ForkJoinPool.commonPool().execute(() -> sealBefore(cutoff));
+                }
+                return;
+            }
+            seen = newest.get();
+        }
+    }
+
+    // Seals the appended loans of every month before the given one. Late
+    // returns into a sealed month become another segment of that month.
+    // Returns the number of loans sealed.
+    public int sealBefore(YearMonth month) {
+        sealLock.lock();
+        try {
+            int sealed = 0;
+            for (Month m : months.headMap(month, false).values()) {
+                sealed += m.seal();
+            }
+            return sealed;
+        } finally {
+            sealLock.unlock();
+        }
+    }
+
+    // every archived loan of the member, oldest return first
+    public List<ClosedLoan> historyOf(String memberId) {
+        List<ClosedLoan> history = new ArrayList<>();
+        for (Month m : months.values()) {
+            m.collectMember(memberId, history);
+        }
+        return history;
+    }
+
+    // archived loans of the ISBN borrowed between from and to inclusive; a loan
+    // returned before from was also borrowed before it, so those months are skipped
+    public int borrowCount(Isbn isbn, LocalDate from, LocalDate to) {
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        int count = 0;
+        for (Month m : months.tailMap(YearMonth.from(from), true).values()) {
+            count += m.countBorrows(isbn, fromDay, toDay);
+        }
+        return count;
+    }
+
+    // loans returned between from and to inclusive, oldest first; months are
+    // read one at a time as the stream advances
+    public Stream<ClosedLoan> returnedBetween(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            return Stream.empty();
+        }
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        return months.subMap(YearMonth.from(from), true, YearMonth.from(to), true).values().stream()
+                .flatMap(m -> m.returnedBetween(fromDay, toDay).stream());
+    }
+
+    public long size() {
+        return size.get();
+    }
+
+    public int monthCount() {
+        return months.size();
+    }
+
+    // Point-in-time copy for LibraryStore snapshots. Sealed segments are
+    // shared; the caller must keep new loans from being archived meanwhile.
+    Contents contents() {
+        List<MonthContents> copy = new ArrayList<>(months.size());
+        for (Month m : months.values()) {
+            copy.add(m.contents());
+        }
+        return new Contents(copy);
+    }
+
+    // loads a snapshot written by Contents.writeTo into this (empty) archive
+    void restore(DataInput in) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            YearMonth month = YearMonth.of(in.readInt(), in.readInt());
+            Month m = months.computeIfAbsent(month, Month::new);
+            List<Segment> segments = new ArrayList<>();
+            for (int s = in.readInt(); s > 0; s--) {
+                Segment segment = Segment.read(in);
+                segments.add(segment);
+                size.addAndGet(segment.size);
+            }
+            m.restore(segments);
+            for (int n = in.readInt(); n > 0; n--) {
+                m.add(readLoan(in));
+                size.incrementAndGet();
+            }
+            advance(month);
+        }
+    }
+
+    private record MonthContents(YearMonth month, List<Segment> segments, List<ClosedLoan> open) {
+    }
+
+    static final class Contents {
+
+        private final List<MonthContents> months;
+
+        private Contents(List<MonthContents> months) {
+            this.months = months;
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeInt(months.size());
+            for (MonthContents m : months) {
+                out.writeInt(m.month().getYear());
+                out.writeInt(m.month().getMonthValue());
+                out.writeInt(m.segments().size());
+                for (Segment segment : m.segments()) {
+                    segment.writeTo(out);
+                }
+                out.writeInt(m.open().size());
+                for (ClosedLoan closed : m.open()) {
+                    writeLoan(out, closed);
+                }
+            }
+        }
+    }
+
+    private static void writeLoan(DataOutput out, ClosedLoan closed) throws IOException {
+        LoanRecord record = closed.loan();
+        out.writeInt(record.loanId());
+        out.writeLong(record.isbn().toLong());
+        out.writeUTF(record.memberId());
+        out.writeInt((int) record.borrowDate().toEpochDay());
+        out.writeInt((int) record.dueDate().toEpochDay());
+        out.writeInt((int) closed.returnDate().toEpochDay());
+        out.writeInt(record.copyNumber());
+    }
+
+    private static ClosedLoan readLoan(DataInput in) throws IOException {
+        int loanId = in.readInt();
+        Isbn isbn = Isbn.of(in.readLong());
+        String memberId = in.readUTF();
+        LocalDate borrowDate = LocalDate.ofEpochDay(in.readInt());
+        LocalDate dueDate = LocalDate.ofEpochDay(in.readInt());
+        LocalDate returnDate = LocalDate.ofEpochDay(in.readInt());
+        int copy = in.readInt();
+        return new ClosedLoan(new LoanRecord(loanId, isbn, memberId, borrowDate, dueDate, copy), returnDate);
+    }
+
+    // One month: sealed segments plus loans appended since the last seal,
+    // spread over shards so concurrent returns rarely share a lock. Appends
+    // and queries share the read lock; sealing swaps state under the write lock.
+    private static final class Month {
+
+        private final YearMonth month;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Shard[] shards = new Shard[SHARDS];
+        private List<Segment> segments = List.of();
+        private List<ClosedLoan> sealing = List.of(); // taken from the shards, not yet encoded
+
+        Month(YearMonth month) {
+            this.month = month;
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = new Shard();
+            }
+        }
+
+        void add(ClosedLoan closed) {
+            lock.readLock().lock();
+            try {
+                Shard shard = shards[closed.loan().loanId() & (SHARDS - 1)];
+                shard.lock.lock();
+                try {
+                    shard.add(closed);
+                } finally {
+                    shard.lock.unlock();
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        int seal() {
+            List<ClosedLoan> pending = new ArrayList<>();
+            lock.writeLock().lock();
+            try {
+                for (Shard shard : shards) {
+                    pending.addAll(shard.loans);
+                    shard.clear();
+                }
+                if (pending.isEmpty()) {
+                    return 0;
+                }
+                pending.sort(BY_RETURN_DATE);
+                sealing = pending;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            // encoding runs unlocked; queries still find the loans in sealing
+            Segment segment = Segment.encode(pending);
+            lock.writeLock().lock();
+            try {
+                List<Segment> grown = new ArrayList<>(segments);
+                grown.add(segment);
+                segments = List.copyOf(grown);
+                sealing = List.of();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return pending.size();
+        }
+
+        void restore(List<Segment> restored) {
+            lock.writeLock().lock();
+            try {
+                List<Segment> grown = new ArrayList<>(segments);
+                grown.addAll(restored);
+                segments = List.copyOf(grown);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void collectMember(String memberId, List<ClosedLoan> out) {
+            List<ClosedLoan> found = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                for (Segment segment : segments) {
+                    segment.collectMember(memberId, found);
+                }
+                for (ClosedLoan closed : sealing) {
+                    if (closed.memberId().equals(memberId)) {
+                        found.add(closed);
+                    }
+                }
+                for (Shard shard : shards) {
+                    shard.lock.lock();
+                    try {
+                        List<ClosedLoan> loans = shard.byMember.get(memberId);
+                        if (loans != null) {
+                            found.addAll(loans);
+                        }
+                    } finally {
+                        shard.lock.unlock();
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            found.sort(BY_RETURN_DATE);
+            out.addAll(found);
+        }
+
+        int countBorrows(Isbn isbn, int fromDay, int toDay) {
+            int count = 0;
+            lock.readLock().lock();
+            try {
+                for (Segment segment : segments) {
+                    count += segment.countBorrows(isbn, fromDay, toDay);
+                }
+                for (ClosedLoan closed : sealing) {
+                    if (closed.isbn().equals(isbn) && borrowedWithin(closed, fromDay, toDay)) {
+                        count++;
+                    }
+                }
+                for (Shard shard : shards) {
+                    shard.lock.lock();
+                    try {
+                        List<ClosedLoan> loans = shard.byIsbn.get(isbn);
+                        if (loans != null) {
+                            for (ClosedLoan closed : loans) {
+                                if (borrowedWithin(closed, fromDay, toDay)) {
+                                    count++;
+                                }
+                            }
+                        }
+                    } finally {
+                        shard.lock.unlock();
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return count;
+        }
+
+        List<ClosedLoan> returnedBetween(int fromDay, int toDay) {
+            List<ClosedLoan> found = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                for (Segment segment : segments) {
+                    segment.collectReturned(fromDay, toDay, found);
+                }
+                for (ClosedLoan closed : sealing) {
+                    if (returnedWithin(closed, fromDay, toDay)) {
+                        found.add(closed);
+                    }
+                }
+                for (Shard shard : shards) {
+                    shard.lock.lock();
+                    try {
+                        for (ClosedLoan closed : shard.loans) {
+                            if (returnedWithin(closed, fromDay, toDay)) {
+                                found.add(closed);
+                            }
+                        }
+                    } finally {
+                        shard.lock.unlock();
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            found.sort(BY_RETURN_DATE);
+            return found;
+        }
+
+        MonthContents contents() {
+            lock.readLock().lock();
+            try {
+                List<ClosedLoan> open = new ArrayList<>(sealing);
+                for (Shard shard : shards) {
+                    shard.lock.lock();
+                    try {
+                        open.addAll(shard.loans);
+                    } finally {
+                        shard.lock.unlock();
+                    }
+                }
+                return new MonthContents(month, segments, open);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private static boolean borrowedWithin(ClosedLoan closed, int fromDay, int toDay) {
+            long day = closed.loan().borrowDate().toEpochDay();
+            return day >= fromDay && day <= toDay;
+        }
+
+        private static boolean returnedWithin(ClosedLoan closed, int fromDay, int toDay) {
+            long day = closed.returnDate().toEpochDay();
+            return day >= fromDay && day <= toDay;
+        }
+    }
+
+    // guarded by its own lock, not a monitor, so a virtual thread that
+    // archives a loan never pins its carrier
+    private static final class Shard {
+
+        final ReentrantLock lock = new ReentrantLock();
+        final List<ClosedLoan> loans = new ArrayList<>();
+        final Map<String, List<ClosedLoan>> byMember = new HashMap<>();
+        final Map<Isbn, List<ClosedLoan>> byIsbn = new HashMap<>();
+
+        void add(ClosedLoan closed) {
+            loans.add(closed);
+            byMember.computeIfAbsent(closed.memberId(), k -> new ArrayList<>(4)).add(closed);
+            byIsbn.computeIfAbsent(closed.isbn(), k -> new ArrayList<>(4)).add(closed);
+        }
+
+        void clear() {
+            loans.clear();
+            byMember.clear();
+            byIsbn.clear();
+        }
+    }
+
+    // Immutable, sorted by return date. Records are fixed-width (loan id, ISBN,
+    // member dictionary index, borrow/due/return epoch days, copy) and deflated
+    // BLOCK_SIZE at a time.
+    private static final class Segment {
+
+        private final int size;
+        private final String[] members;
+        private final byte[][] blocks;
+        private final int[] firstReturnDays;
+        private final int[] lastReturnDays;
+        private final Map<String, int[]> blocksByMember;
+        private final Map<Isbn, int[]> borrowDaysByIsbn;
+        private final int minBorrowDay;
+        private final int maxBorrowDay;
+
+        private Segment(int size, String[] members, byte[][] blocks, int[] firstReturnDays,
+                int[] lastReturnDays, Map<String, int[]> blocksByMember, Map<Isbn, int[]> borrowDaysByIsbn) {
+            this.size = size;
+            this.members = members;
+            this.blocks = blocks;
+            this.firstReturnDays = firstReturnDays;
+            this.lastReturnDays = lastReturnDays;
+            this.blocksByMember = blocksByMember;
+            this.borrowDaysByIsbn = borrowDaysByIsbn;
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int[] days : borrowDaysByIsbn.values()) {
+                min = Math.min(min, days[0]);
+                max = Math.max(max, days[days.length - 1]);
+            }
+            this.minBorrowDay = min;
+            this.maxBorrowDay = max;
+        }
+
+        static Segment encode(List<ClosedLoan> sorted) {
+            int blockCount = (sorted.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            byte[][] blocks = new byte[blockCount][];
+            int[] firstReturnDays = new int[blockCount];
+            int[] lastReturnDays = new int[blockCount];
+            Map<String, Integer> memberIds = new HashMap<>();
+            Map<String, List<Integer>> memberBlocks = new HashMap<>();
+            Map<Isbn, List<Integer>> borrowDays = new HashMap<>();
+            ByteBuffer raw = ByteBuffer.allocate(BLOCK_SIZE * RECORD_BYTES);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                for (int b = 0; b < blockCount; b++) {
+                    raw.clear();
+                    int start = b * BLOCK_SIZE;
+                    int end = Math.min(sorted.size(), start + BLOCK_SIZE);
+                    for (int i = start; i < end; i++) {
+                        ClosedLoan closed = sorted.get(i);
+                        LoanRecord record = closed.loan();
+                        int member = memberIds.computeIfAbsent(record.memberId(), k -> memberIds.size());
+                        int borrowDay = (int) record.borrowDate().toEpochDay();
+                        raw.putInt(record.loanId())
+                                .putLong(record.isbn().toLong())
+                                .putInt(member)
+                                .putInt(borrowDay)
+                                .putInt((int) record.dueDate().toEpochDay())
+                                .putInt((int) closed.returnDate().toEpochDay())
+                                .putInt(record.copyNumber());
+                        List<Integer> inBlocks = memberBlocks.computeIfAbsent(record.memberId(), k -> new ArrayList<>(2));
+                        if (inBlocks.isEmpty() || inBlocks.get(inBlocks.size() - 1) != b) {
+                            inBlocks.add(b);
+                        }
+                        borrowDays.computeIfAbsent(record.isbn(), k -> new ArrayList<>(2)).add(borrowDay);
+                    }
+                    firstReturnDays[b] = (int) sorted.get(start).returnDate().toEpochDay();
+                    lastReturnDays[b] = (int) sorted.get(end - 1).returnDate().toEpochDay();
+                    blocks[b] = deflate(deflater, raw.array(), raw.position());
+                    deflater.reset();
+                }
+            } finally {
+                deflater.end();
+            }
+            String[] members = new String[memberIds.size()];
+            memberIds.forEach((member, id) -> members[id] = member);
+            Map<String, int[]> blocksByMember = new HashMap<>(memberBlocks.size() * 2);
+            memberBlocks.forEach((member, inBlocks) -> blocksByMember.put(member, toSortedArray(inBlocks)));
+            Map<Isbn, int[]> borrowDaysByIsbn = new HashMap<>(borrowDays.size() * 2);
+            borrowDays.forEach((isbn, days) -> borrowDaysByIsbn.put(isbn, toSortedArray(days)));
+            return new Segment(sorted.size(), members, blocks, firstReturnDays, lastReturnDays,
+                    blocksByMember, borrowDaysByIsbn);
+        }
+
+        void collectMember(String memberId, List<ClosedLoan> out) {
+            int[] inBlocks = blocksByMember.get(memberId);
+            if (inBlocks == null) {
+                return;
+            }
+            for (int b : inBlocks) {
+                for (ClosedLoan closed : block(b)) {
+                    if (closed.memberId().equals(memberId)) {
+                        out.add(closed);
+                    }
+                }
+            }
+        }
+
+        int countBorrows(Isbn isbn, int fromDay, int toDay) {
+            if (toDay < minBorrowDay || fromDay > maxBorrowDay) {
+                return 0;
+            }
+            int[] days = borrowDaysByIsbn.get(isbn);
+            return days == null ? 0 : firstAfter(days, toDay) - firstAfter(days, fromDay - 1);
+        }
+
+        void collectReturned(int fromDay, int toDay, List<ClosedLoan> out) {
+            for (int b = 0; b < blocks.length && firstReturnDays[b] <= toDay; b++) {
+                if (lastReturnDays[b] < fromDay) {
+                    continue;
+                }
+                for (ClosedLoan closed : block(b)) {
+                    long day = closed.returnDate().toEpochDay();
+                    if (day >= fromDay && day <= toDay) {
+                        out.add(closed);
+                    }
+                }
+            }
+        }
+
+        private List<ClosedLoan> block(int b) {
+            int count = b == blocks.length - 1 ? size - b * BLOCK_SIZE : BLOCK_SIZE;
+            ByteBuffer in = ByteBuffer.wrap(inflate(blocks[b], count * RECORD_BYTES));
+            List<ClosedLoan> loans = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int loanId = in.getInt();
+                Isbn isbn = Isbn.of(in.getLong());
+                String member = members[in.getInt()];
+                LocalDate borrowDate = LocalDate.ofEpochDay(in.getInt());
+                LocalDate dueDate = LocalDate.ofEpochDay(in.getInt());
+                LocalDate returnDate = LocalDate.ofEpochDay(in.getInt());
+                int copy = in.getInt();
+                loans.add(new ClosedLoan(new LoanRecord(loanId, isbn, member, borrowDate, dueDate, copy), returnDate));
+            }
+            return loans;
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeInt(size);
+            out.writeInt(members.length);
+            for (String member : members) {
+                out.writeUTF(member);
+            }
+            out.writeInt(blocks.length);
+            for (int b = 0; b < blocks.length; b++) {
+                out.writeInt(firstReturnDays[b]);
+                out.writeInt(lastReturnDays[b]);
+                out.writeInt(blocks[b].length);
+                out.write(blocks[b]);
+            }
+            for (String member : members) {
+                writeInts(out, blocksByMember.get(member));
+            }
+            out.writeInt(borrowDaysByIsbn.size());
+            for (Map.Entry<Isbn, int[]> entry : borrowDaysByIsbn.entrySet()) {
+                out.writeLong(entry.getKey().toLong());
+                writeInts(out, entry.getValue());
+            }
+        }
+
+        static Segment read(DataInput in) throws IOException {
+            int size = in.readInt();
+            String[] members = new String[in.readInt()];
+            for (int i = 0; i < members.length; i++) {
+                members[i] = in.readUTF();
+            }
+            int blockCount = in.readInt();
+            byte[][] blocks = new byte[blockCount][];
+            int[] firstReturnDays = new int[blockCount];
+            int[] lastReturnDays = new int[blockCount];
+            for (int b = 0; b < blockCount; b++) {
+                firstReturnDays[b] = in.readInt();
+                lastReturnDays[b] = in.readInt();
+                blocks[b] = new byte[in.readInt()];
+                in.readFully(blocks[b]);
+            }
+            Map<String, int[]> blocksByMember = new HashMap<>(members.length * 2);
+            for (String member : members) {
+                blocksByMember.put(member, readInts(in));
+            }
+            int isbns = in.readInt();
+            Map<Isbn, int[]> borrowDaysByIsbn = new HashMap<>(isbns * 2);
+            for (int i = 0; i < isbns; i++) {
+                borrowDaysByIsbn.put(Isbn.of(in.readLong()), readInts(in));
+            }
+            return new Segment(size, members, blocks, firstReturnDays, lastReturnDays,
+                    blocksByMember, borrowDaysByIsbn);
+        }
+
+        // index of the first day greater than the given one
+        private static int firstAfter(int[] days, int day) {
+            int lo = 0;
+            int hi = days.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (days[mid] <= day) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private static int[] toSortedArray(List<Integer> values) {
+            int[] array = new int[values.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = values.get(i);
+            }
+            Arrays.sort(array);
+            return array;
+        }
+
+        private static void writeInts(DataOutput out, int[] values) throws IOException {
+            out.writeInt(values.length);
+            for (int value : values) {
+                out.writeInt(value);
+            }
+        }
+
+        private static int[] readInts(DataInput in) throws IOException {
+            int[] values = new int[in.readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.readInt();
+            }
+            return values;
+        }
+
+        private static byte[] deflate(Deflater deflater, byte[] raw, int length) {
+            deflater.setInput(raw, 0, length);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 4 + 64);
+            byte[] chunk = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        }
+
+        private static byte[] inflate(byte[] packed, int length) {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(packed);
+                byte[] raw = new byte[length];
+                int n = 0;
+                while (n < length) {
+                    int read = inflater.inflate(raw, n, length - n);
+                    if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new IllegalStateException("Truncated loan archive block");
+                    }
+                    n += read;
+                }
+                return raw;
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Corrupt loan archive block", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
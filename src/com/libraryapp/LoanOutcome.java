@@ -0,0 +1,10 @@
+package com.libraryapp;
+
+// Result of a borrow or return that does not throw: the LoanRecord that was
+// opened or closed, or the LoanStatus saying why nothing happened.
+public sealed interface LoanOutcome permits LoanRecord, LoanStatus {
+
+    default boolean succeeded() {
+        return this instanceof LoanRecord;
+    }
+}
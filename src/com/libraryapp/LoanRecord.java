@@ -2,10 +2,16 @@ package com.libraryapp;
 
 import java.time.LocalDate;
 
+// copyNumber is the physical copy that was lent, numbered from 1
 public record LoanRecord(
         int loanId,
         Isbn isbn,
         String memberId,
         LocalDate borrowDate,
-        LocalDate dueDate) {
+        LocalDate dueDate,
+        int copyNumber) implements LoanOutcome {
+
+    public LoanRecord(int loanId, Isbn isbn, String memberId, LocalDate borrowDate, LocalDate dueDate) {
+        this(loanId, isbn, memberId, borrowDate, dueDate, 1);
+    }
 }
@@ -0,0 +1,24 @@
+package com.libraryapp;
+
+public enum LoanStatus implements LoanOutcome {
+    UNKNOWN_MEMBER("No user with this ID."),
+    NOT_A_MEMBER("Only members can borrow books."),
+    UNKNOWN_BOOK("Book not found for this ISBN."),
+    NOT_AVAILABLE("Book is already borrowed."),
+    RESERVED("Book is being held for another member."),
+    ALREADY_BORROWED("Member already has this book on loan."),
+    NO_ACTIVE_LOAN("No loan found for this member and book."),
+    DUPLICATE_IN_BATCH("ISBN appears more than once in the batch."),
+    // the item itself was fine, but another item failed so nothing was applied
+    ABORTED("Batch rolled back because another item failed.");
+
+    private final String message;
+
+    LoanStatus(String message) {
+        this.message = message;
+    }
+
+    public String message() {
+        return message;
+    }
+}
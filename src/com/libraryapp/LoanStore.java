@@ -0,0 +1,134 @@
+package com.libraryapp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class LoanStore {
+
+    // Safe for concurrent use as long as open and close for one ISBN never
+    // overlap; Library runs them under that ISBN's lock. Loans of one member
+    // for different ISBNs can change at once, so a member's bucket is kept
+    // once made (users are never removed) and no insert can race its removal.
+    // An ISBN's bucket is dropped once empty, so hasActiveLoan is one lookup.
+    private final ConcurrentSkipListMap<Integer, LoanRecord> active = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Map<Isbn, LoanRecord>> byMember = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Isbn, Map<String, LoanRecord>> byIsbn = new ConcurrentHashMap<>();
+    private final AtomicInteger loanIds;
+    private final AtomicInteger count = new AtomicInteger();
+    private final OverdueTracker dueDates = new OverdueTracker();
+
+    public LoanStore(List<LoanRecord> initial) {
+        int maxId = 0;
+        for (LoanRecord record : Objects.requireNonNull(initial)) {
+            open(record);
+            maxId = Math.max(maxId, record.loanId());
+        }
+        this.loanIds = new AtomicInteger(maxId);
+    }
+
+    // ids are never reused, even after the loan is closed
+    public int nextLoanId() {
+        return loanIds.incrementAndGet();
+    }
+
+    public int lastLoanId() {
+        return loanIds.get();
+    }
+
+    // used when restoring loans whose ids were assigned elsewhere
+    public void advanceLoanIds(int atLeast) {
+        loanIds.accumulateAndGet(atLeast, Math::max);
+    }
+
+    // false, and nothing recorded, if the member already has this ISBN on loan
+    public boolean open(LoanRecord record) {
+        Objects.requireNonNull(record);
+        Map<Isbn, LoanRecord> memberLoans = byMember.computeIfAbsent(record.memberId(),
+                member -> new ConcurrentHashMap<>());
+        if (memberLoans.putIfAbsent(record.isbn(), record) != null) {
+            return false;
+        }
+        byIsbn.computeIfAbsent(record.isbn(), isbn -> new ConcurrentHashMap<>(2))
+                .put(record.memberId(), record);
+        active.put(record.loanId(), record);
+        dueDates.track(record);
+        count.incrementAndGet();
+        return true;
+    }
+
+    public LoanRecord close(String memberId, Isbn isbn) {
+        Map<Isbn, LoanRecord> memberLoans = byMember.get(memberId);
+        LoanRecord record = memberLoans == null ? null : memberLoans.remove(isbn);
+        if (record == null) {
+            return null;
+        }
+        Map<String, LoanRecord> isbnLoans = byIsbn.get(isbn);
+        isbnLoans.remove(memberId);
+        if (isbnLoans.isEmpty()) {
+            byIsbn.remove(isbn, isbnLoans);
+        }
+        active.remove(record.loanId());
+        dueDates.untrack(record);
+        count.decrementAndGet();
+        return record;
+    }
+
+    public LoanRecord find(String memberId, Isbn isbn) {
+        Map<Isbn, LoanRecord> memberLoans = byMember.get(memberId);
+        return memberLoans == null ? null : memberLoans.get(isbn);
+    }
+
+    public boolean hasActiveLoan(Isbn isbn) {
+        return byIsbn.containsKey(isbn);
+    }
+
+    public Collection<LoanRecord> loansOf(String memberId) {
+        Map<Isbn, LoanRecord> memberLoans = byMember.get(memberId);
+        return memberLoans == null
+                ? Collections.emptyList()
+                : Collections.unmodifiableCollection(memberLoans.values());
+    }
+
+    public Collection<LoanRecord> loansOf(Isbn isbn) {
+        Map<String, LoanRecord> isbnLoans = byIsbn.get(isbn);
+        return isbnLoans == null
+                ? Collections.emptyList()
+                : Collections.unmodifiableCollection(isbnLoans.values());
+    }
+
+    // ordered by loan id; weakly consistent while loans are being opened or closed
+    public Collection<LoanRecord> all() {
+        return Collections.unmodifiableCollection(active.values());
+    }
+
+    // up to limit loans with ids greater than afterId, in id order
+    public List<LoanRecord> page(int afterId, int limit) {
+        List<LoanRecord> page = new ArrayList<>(Math.min(limit, 256));
+        for (LoanRecord record : active.tailMap(afterId, false).values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(record);
+        }
+        return page;
+    }
+
+    public OverdueTracker dueDates() {
+        return dueDates;
+    }
+
+    public int size() {
+        return count.get();
+    }
+
+    public boolean isEmpty() {
+        return active.isEmpty();
+    }
+}
@@ -0,0 +1,66 @@
+package com.libraryapp;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+public final class LockStripes {
+
+    private final Lock[] stripes;
+    private final int mask;
+
+    public LockStripes(int minStripes) {
+        if (minStripes <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive.");
+        }
+        int size = Integer.highestOneBit(minStripes - 1) << 1;
+        this.stripes = new Lock[Math.max(1, size)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.mask = stripes.length - 1;
+    }
+
+    public Lock lockFor(Object key) {
+        return stripes[indexFor(key)];
+    }
+
+    public int indexFor(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    // locks the distinct stripes of all keys in ascending stripe order, so two
+    // threads locking overlapping key sets cannot deadlock; pass the result
+    // to unlock()
+    public int[] lockAll(Collection<?> keys) {
+        int[] indexes = new int[keys.size()];
+        int n = 0;
+        for (Object key : keys) {
+            indexes[n++] = indexFor(key);
+        }
+        Arrays.sort(indexes);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || indexes[distinct - 1] != indexes[i]) {
+                indexes[distinct++] = indexes[i];
+            }
+        }
+        int[] held = Arrays.copyOf(indexes, distinct);
+        for (int index : held) {
+            stripes[index].lock();
+        }
+        return held;
+    }
+
+    public void unlock(int[] held) {
+        for (int i = held.length - 1; i >= 0; i--) {
+            stripes[held[i]].unlock();
+        }
+    }
+
+    public int size() {
+        return stripes.length;
+    }
+}
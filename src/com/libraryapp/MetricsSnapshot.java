@@ -0,0 +1,47 @@
+package com.libraryapp;
+
+import java.util.Map;
+
+// Point-in-time copy of LibraryMetrics. Latencies are in nanoseconds;
+// percentiles are bucket upper bounds, accurate to about 6%.
+public record MetricsSnapshot(Map<LibraryMetrics.Operation, OperationStats> operations,
+        Map<String, Long> errors) {
+
+    public record OperationStats(long calls, long failures, long meanNanos,
+            long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+    }
+
+    public MetricsSnapshot {
+        operations = Map.copyOf(operations);
+        errors = Map.copyOf(errors);
+    }
+
+    // plain-text exposition, one line per counter, for a metrics endpoint
+    public String format() {
+        StringBuilder out = new StringBuilder();
+        for (LibraryMetrics.Operation op : LibraryMetrics.Operation.values()) {
+            OperationStats stats = operations.get(op);
+            if (stats == null) {
+                continue;
+            }
+            String name = op.name().toLowerCase();
+            line(out, name, "calls", stats.calls());
+            line(out, name, "failures", stats.failures());
+            line(out, name, "mean_ns", stats.meanNanos());
+            line(out, name, "p50_ns", stats.p50Nanos());
+            line(out, name, "p99_ns", stats.p99Nanos());
+            line(out, name, "p999_ns", stats.p999Nanos());
+            line(out, name, "max_ns", stats.maxNanos());
+        }
+        errors.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(e -> out.append("library_errors{type=\"").append(e.getKey())
+                        .append("\"} ").append(e.getValue()).append('\n'));
+        return out.toString();
+    }
+
+    private static void line(StringBuilder out, String op, String metric, long value) {
+        out.append("library_").append(metric).append("{op=\"").append(op)
+                .append("\"} ").append(value).append('\n');
+    }
+}
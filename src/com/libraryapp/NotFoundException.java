@@ -0,0 +1,7 @@
+package com.libraryapp;
+
+public class NotFoundException extends LibraryException {
+    public NotFoundException(String message) {
+        super(message);
+    }
+}
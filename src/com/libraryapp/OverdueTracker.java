@@ -0,0 +1,50 @@
+package com.libraryapp;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Active loans ordered by due date, so range questions only walk the matches.
+public final class OverdueTracker {
+
+    private static final Comparator<LoanRecord> BY_DUE_DATE =
+            Comparator.comparing(LoanRecord::dueDate).thenComparingInt(LoanRecord::loanId);
+
+    private final NavigableSet<LoanRecord> byDueDate = new ConcurrentSkipListSet<>(BY_DUE_DATE);
+
+    public void track(LoanRecord record) {
+        byDueDate.add(Objects.requireNonNull(record));
+    }
+
+    public void untrack(LoanRecord record) {
+        byDueDate.remove(record);
+    }
+
+    // loans with a due date strictly before the given day (see Borrowable.isOverdue)
+    public List<LoanRecord> overdueAsOf(LocalDate on) {
+        return new ArrayList<>(byDueDate.headSet(bound(on, Integer.MIN_VALUE), false));
+    }
+
+    // loans falling due between from and from + days, both inclusive
+    public List<LoanRecord> dueWithin(LocalDate from, int days) {
+        if (days < 0) {
+            throw new IllegalArgumentException("Days cannot be negative");
+        }
+        return new ArrayList<>(byDueDate.subSet(
+                bound(from, Integer.MIN_VALUE), true,
+                bound(from.plusDays(days), Integer.MAX_VALUE), true));
+    }
+
+    public LoanRecord nextDue() {
+        return byDueDate.isEmpty() ? null : byDueDate.first();
+    }
+
+    // search key: only the due date and loan id take part in the ordering
+    private static LoanRecord bound(LocalDate dueDate, int loanId) {
+        return new LoanRecord(loanId, null, null, null, Objects.requireNonNull(dueDate));
+    }
+}
@@ -0,0 +1,16 @@
+package com.libraryapp;
+
+import java.util.List;
+
+// One page of a listing. Pass nextPageToken back to continue after the last
+// entry; it is null on the final page.
+public record Page<T>(List<T> items, String nextPageToken) {
+
+    public Page {
+        items = List.copyOf(items);
+    }
+
+    public boolean hasNext() {
+        return nextPageToken != null;
+    }
+}
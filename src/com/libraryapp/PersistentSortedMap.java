@@ -0,0 +1,166 @@
+package com.libraryapp;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Immutable sorted map. plus and minus return a new map that shares all but
+// the O(log n) nodes on the changed path, so old versions stay valid for as
+// long as someone holds them. It is a treap whose priorities come from the
+// key hash, which keeps the shape independent of insertion order.
+public final class PersistentSortedMap<K extends Comparable<? super K>, V> {
+
+    private static final PersistentSortedMap<?, ?> EMPTY = new PersistentSortedMap<>(null, 0);
+
+    private final Node<K, V> root;
+    private final int size;
+
+    private PersistentSortedMap(Node<K, V> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> empty() {
+        return (PersistentSortedMap<K, V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public V get(K key) {
+        Node<K, V> n = root;
+        while (n != null) {
+            int c = key.compareTo(n.key);
+            if (c == 0) {
+                return n.value;
+            }
+            n = c < 0 ? n.left : n.right;
+        }
+        return null;
+    }
+
+    public PersistentSortedMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        boolean added = get(key) == null;
+        return new PersistentSortedMap<>(insert(root, key, value, priority(key)), added ? size + 1 : size);
+    }
+
+    public PersistentSortedMap<K, V> minus(K key) {
+        if (get(key) == null) {
+            return this;
+        }
+        return new PersistentSortedMap<>(delete(root, key), size - 1);
+    }
+
+    public Stream<V> values() {
+        return valuesAfter(null);
+    }
+
+    // values with keys strictly greater than the given one (all if null), in key order
+    public Stream<V> valuesAfter(K key) {
+        return StreamSupport.stream(Spliterators.spliterator(iteratorAfter(key), size,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    public Iterator<V> iteratorAfter(K key) {
+        Deque<Node<K, V>> path = new ArrayDeque<>();
+        for (Node<K, V> n = root; n != null; ) {
+            if (key == null || key.compareTo(n.key) < 0) {
+                path.push(n);
+                n = n.left;
+            } else {
+                n = n.right;
+            }
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !path.isEmpty();
+            }
+
+            @Override
+            public V next() {
+                if (path.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node<K, V> n = path.pop();
+                for (Node<K, V> m = n.right; m != null; m = m.left) {
+                    path.push(m);
+                }
+                return n.value;
+            }
+        };
+    }
+
+    private static <K extends Comparable<? super K>, V> Node<K, V> insert(Node<K, V> n, K key, V value, int priority) {
+        if (n == null) {
+            return new Node<>(key, value, priority, null, null);
+        }
+        int c = key.compareTo(n.key);
+        if (c == 0) {
+            return new Node<>(key, value, n.priority, n.left, n.right);
+        }
+        if (c < 0) {
+            Node<K, V> left = insert(n.left, key, value, priority);
+            if (left.priority > n.priority) {
+                // rotate right
+                return new Node<>(left.key, left.value, left.priority, left.left,
+                        new Node<>(n.key, n.value, n.priority, left.right, n.right));
+            }
+            return new Node<>(n.key, n.value, n.priority, left, n.right);
+        }
+        Node<K, V> right = insert(n.right, key, value, priority);
+        if (right.priority > n.priority) {
+            // rotate left
+            return new Node<>(right.key, right.value, right.priority,
+                    new Node<>(n.key, n.value, n.priority, n.left, right.left), right.right);
+        }
+        return new Node<>(n.key, n.value, n.priority, n.left, right);
+    }
+
+    private static <K extends Comparable<? super K>, V> Node<K, V> delete(Node<K, V> n, K key) {
+        int c = key.compareTo(n.key);
+        if (c == 0) {
+            return join(n.left, n.right);
+        }
+        if (c < 0) {
+            return new Node<>(n.key, n.value, n.priority, delete(n.left, key), n.right);
+        }
+        return new Node<>(n.key, n.value, n.priority, n.left, delete(n.right, key));
+    }
+
+    // every key in a sorts before every key in b
+    private static <K extends Comparable<? super K>, V> Node<K, V> join(Node<K, V> a, Node<K, V> b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            return new Node<>(a.key, a.value, a.priority, a.left, join(a.right, b));
+        }
+        return new Node<>(b.key, b.value, b.priority, join(a, b.left), b.right);
+    }
+
+    private static int priority(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private record Node<K, V>(K key, V value, int priority, Node<K, V> left, Node<K, V> right) {
+    }
+}
@@ -0,0 +1,12 @@
+package com.libraryapp;
+
+import java.time.LocalDate;
+
+// A returned copy set aside for a member from the head of its hold queue.
+// Only that member can borrow it until the end of pickupBy.
+public record Reservation(Isbn isbn, String memberId, int copyNumber, LocalDate readySince, LocalDate pickupBy) {
+
+    public boolean isExpired(LocalDate on) {
+        return on.isAfter(pickupBy);
+    }
+}
@@ -0,0 +1,12 @@
+package com.libraryapp;
+
+import java.util.Comparator;
+
+// One ranked search result. score is in (0, 1]; 1 is an exact title match.
+public record SearchHit(BookItem book, double score) {
+
+    // highest score first, then by title and ISBN so shards merge stably
+    static final Comparator<SearchHit> BEST_FIRST = Comparator.comparingDouble(SearchHit::score).reversed()
+            .thenComparing(hit -> hit.book().getTitle())
+            .thenComparing(hit -> hit.book().getIsbn(), Comparator.comparingLong(Isbn::toLong));
+}
@@ -0,0 +1,37 @@
+package com.libraryapp;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// How a ShardedLibrary reaches its shards. Requests are plain functions of a
+// shard's Library; a remote transport would ship them as messages instead.
+public interface ShardTransport extends Closeable {
+
+    @FunctionalInterface
+    interface Request<T> {
+        T apply(Library shard) throws LibraryException;
+    }
+
+    int shardCount();
+
+    // runs the request on one shard; fails with the request's exception
+    <T> CompletableFuture<T> call(int shard, Request<T> request);
+
+    // starts an empty shard and returns its index
+    int addShard();
+
+    default <T> T invoke(int shard, Request<T> request) throws LibraryException {
+        try {
+            return call(shard, request).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof LibraryException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
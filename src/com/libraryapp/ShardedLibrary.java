@@ -0,0 +1,462 @@
+package com.libraryapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+// A Library split across shards. Books, and the loans and holds on them, live
+// on the shard that owns their ISBN on a consistent hash ring; point operations
+// go to that one shard. Members are copied to every shard, so a shard can check
+// borrowers locally, and member lookups go to the shard owning the member id.
+// Listings and searches fan out to all shards in parallel and merge the sorted
+// per-shard results. Loan ids are only unique within a shard, and a loan
+// moved to another shard gets a new id there.
+public final class ShardedLibrary implements Closeable {
+
+    private static final int VIRTUAL_NODES = 128;
+
+    private static final Comparator<LibraryItem> BY_ID = Comparator.comparing(LibraryItem::getId);
+    private static final Comparator<LoanRecord> BY_BORROW_DATE = Comparator.comparing(LoanRecord::borrowDate)
+            .thenComparing(LoanRecord::isbn, Comparator.comparingLong(Isbn::toLong))
+            .thenComparing(LoanRecord::memberId);
+    private static final Comparator<LoanRecord> BY_DUE_DATE = Comparator.comparing(LoanRecord::dueDate)
+            .thenComparing(BY_BORROW_DATE);
+
+    private final ShardTransport transport;
+    private final ConsoleRenderer console = new ConsoleRenderer();
+
+    // the ring only changes under the write lock; every operation holds the
+    // read lock. While a rebalance runs, previous is the old ring, and each
+    // moving ISBN is served under its stripe so it is never half moved.
+    private final ReadWriteLock topology = new ReentrantReadWriteLock();
+    private final LockStripes moving = new LockStripes(256);
+    private volatile HashRing ring;
+    private HashRing previous;
+    private Set<Isbn> moved;
+
+    public ShardedLibrary(ShardTransport transport) {
+        this.transport = transport;
+        this.ring = new HashRing(transport.shardCount(), VIRTUAL_NODES);
+    }
+
+    public static ShardedLibrary inProcess(int shards) {
+        return new ShardedLibrary(new InProcessShardTransport(shards,
+                () -> new Library(List.of(), List.of(), List.of())));
+    }
+
+    public int shardCount() {
+        return ring.shardCount();
+    }
+
+    public int shardOf(Isbn isbn) {
+        topology.readLock().lock();
+        try {
+            return previous == null || moved.contains(isbn) ? ring.shardFor(isbn) : previous.shardFor(isbn);
+        } finally {
+            topology.readLock().unlock();
+        }
+    }
+
+    // point operations
+
+    public void addBook(BookItem book) throws LibraryException {
+        Isbn isbn = book.getIsbn();
+        topology.readLock().lock();
+        try {
+            if (previous == null) {
+                transport.invoke(ring.shardFor(isbn), shard -> {
+                    shard.addBook(book);
+                    return null;
+                });
+                return;
+            }
+            // Mid-rebalance the current owner decides: the old shard until the
+            // ISBN has moved, so an existing copy turns the add away as a
+            // duplicate. A book that is on neither shard goes straight to its
+            // new owner, because the rebalance will not list it any more.
+            Lock lock = moving.lockFor(isbn);
+            lock.lock();
+            try {
+                int from = previous.shardFor(isbn);
+                int to = ring.shardFor(isbn);
+                boolean onSource = from != to && !moved.contains(isbn)
+                        && transport.invoke(from, shard -> shard.lookupBookByIsbn(isbn)).isPresent();
+                transport.invoke(onSource ? from : to, shard -> {
+                    shard.addBook(book);
+                    return null;
+                });
+                if (from != to && !onSource) {
+                    moved.add(isbn);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            topology.readLock().unlock();
+        }
+    }
+
+    public boolean removeBook(Isbn isbn) throws LibraryException {
+        return onBook(isbn, shard -> shard.removeBook(isbn));
+    }
+
+    public void addCopies(Isbn isbn, int count, LocalDate on) throws LibraryException {
+        onBook(isbn, shard -> {
+            shard.addCopies(isbn, count, on);
+            return null;
+        });
+    }
+
+    public LibraryItem findItemByIsbn(Isbn isbn) throws LibraryException {
+        return onBook(isbn, shard -> shard.findItemByIsbn(isbn));
+    }
+
+    public Optional<BookItem> lookupBookByIsbn(Isbn isbn) {
+        return unchecked(() -> onBook(isbn, shard -> shard.lookupBookByIsbn(isbn)));
+    }
+
+    public LoanRecord borrowBook(String memberId, Isbn isbn, LocalDate borrowDate) throws LibraryException {
+        return onBook(isbn, shard -> shard.borrowBook(memberId, isbn, borrowDate));
+    }
+
+    public void returnBook(String memberId, Isbn isbn, LocalDate returnDate) throws LibraryException {
+        onBook(isbn, shard -> {
+            shard.returnBook(memberId, isbn, returnDate);
+            return null;
+        });
+    }
+
+    public LoanOutcome tryBorrow(String memberId, Isbn isbn, LocalDate borrowDate) {
+        return unchecked(() -> onBook(isbn, shard -> shard.tryBorrow(memberId, isbn, borrowDate)));
+    }
+
+    public LoanOutcome tryReturn(String memberId, Isbn isbn, LocalDate returnDate) {
+        return unchecked(() -> onBook(isbn, shard -> shard.tryReturn(memberId, isbn, returnDate)));
+    }
+
+    public HoldStatus placeHold(String memberId, Isbn isbn) {
+        return unchecked(() -> onBook(isbn, shard -> shard.placeHold(memberId, isbn)));
+    }
+
+    public boolean cancelHold(String memberId, Isbn isbn, LocalDate on) {
+        return unchecked(() -> onBook(isbn, shard -> shard.cancelHold(memberId, isbn, on)));
+    }
+
+    public void addUser(LibraryUser user) {
+        topology.readLock().lock();
+        try {
+            gather(shard -> {
+                shard.addUser(user);
+                return null;
+            });
+        } finally {
+            topology.readLock().unlock();
+        }
+    }
+
+    public LibraryUser findUserById(String memberId) throws LibraryException {
+        topology.readLock().lock();
+        try {
+            return transport.invoke(ring.shardFor(memberId), shard -> shard.findUserById(memberId));
+        } finally {
+            topology.readLock().unlock();
+        }
+    }
+
+    public Optional<LibraryUser> lookupUserById(String memberId) {
+        topology.readLock().lock();
+        try {
+            return unchecked(() -> transport.invoke(ring.shardFor(memberId),
+                    shard -> shard.lookupUserById(memberId)));
+        } finally {
+            topology.readLock().unlock();
+        }
+    }
+
+    // scatter-gather queries; while a book is moving it can be on two shards,
+    // and the merges keep one (counts may include it twice)
+
+    public List<BookItem> searchBooks(String query) {
+        return merged(shard -> sorted(shard.searchBooks(query), BY_ID), BY_ID);
+    }
+
+    // every shard returns its own best hits; the merged list is cut to limit
+    public List<SearchHit> fuzzySearchBooks(String query, int limit) {
+        List<SearchHit> hits = merged(shard -> shard.fuzzySearchBooks(query, limit), SearchHit.BEST_FIRST);
+        return hits.size() > limit ? hits.subList(0, limit) : hits;
+    }
+
+    // Members are on every shard, each counting only its own books' loans, so
+    // a member's popularity is summed over the shards that suggested them;
+    // one that is in no shard's top limit can be missed.
+    public List<Suggestion> suggest(String prefix, int limit) {
+        topology.readLock().lock();
+        try {
+            Map<String, Suggestion> combined = new HashMap<>();
+            for (List<Suggestion> hits : gather(shard -> shard.suggest(prefix, limit))) {
+                for (Suggestion s : hits) {
+                    boolean member = s.kind() == Suggestion.Kind.MEMBER_ID || s.kind() == Suggestion.Kind.MEMBER_NAME;
+                    combined.merge(s.kind() + "\t" + s.id(), s, (a, b) -> new Suggestion(a.text(), a.kind(), a.id(),
+                            member ? a.popularity() + b.popularity() : Math.max(a.popularity(), b.popularity())));
+                }
+            }
+            return combined.values().stream().sorted(Suggestion.BEST_FIRST).limit(limit).toList();
+        } finally {
+            topology.readLock().unlock();
+        }
+    }
+
+    public List<LibraryItem> findItems(Predicate<? super LibraryItem> filter) {
+        return merged(shard -> shard.streamItems(filter).toList(), BY_ID);
+    }
+
+    public int countBooks(FacetQuery query) {
+        topology.readLock().lock();
+        try {
+            int count = 0;
+            for (int n : gather(shard -> shard.countBooks(query))) {
+                count += n;
+            }
+            return count;
+        } finally {
+            topology.readLock().unlock();
+        }
+    }
+
+    public List<LoanRecord> findActiveLoans() {
+        return merged(shard -> sorted(shard.streamLoans().toList(), BY_BORROW_DATE), BY_BORROW_DATE);
+    }
+
+    public List<LoanRecord> findOverdueLoans(LocalDate asOf) {
+        return merged(shard -> sorted(shard.findOverdueLoans(asOf), BY_DUE_DATE), BY_DUE_DATE);
+    }
+
+    public void printAllItems() {
+        console.renderItems(findItems(item -> true).stream());
+    }
+
+    public void printMatchingItems(Predicate<LibraryItem> predicate) {
+        console.renderItems(findItems(predicate).stream());
+    }
+
+    public void printSearchResults(String query) {
+        console.renderItems(searchBooks(query).stream());
+    }
+
+    public void printFuzzySearchResults(String query, int limit) {
+        console.renderItems(fuzzySearchBooks(query, limit).stream().map(SearchHit::book));
+    }
+
+    public void printLoans() {
+        List<LoanRecord> active = findActiveLoans();
+        if (active.isEmpty()) {
+            System.out.println("No active loans.");
+            return;
+        }
+        console.renderLoans(active.stream());
+    }
+
+    // Adds a shard and moves to it the books it now owns, with their active
+    // loans, hold queues and reservations. Other operations keep running,
+    // each moving ISBN is only blocked while it is copied. Returns the number
+    // of books moved.
+    public int addShard() throws LibraryException {
+        int added;
+        topology.writeLock().lock();
+        try {
+            if (previous != null) {
+                throw new IllegalStateException("A rebalance is already running.");
+            }
+            added = transport.addShard();
+            List<LibraryUser> users = transport.invoke(0, shard -> List.copyOf(shard.allUsers()));
+            transport.invoke(added, shard -> {
+                users.forEach(shard::addUser);
+                return null;
+            });
+            previous = ring;
+            moved = ConcurrentHashMap.newKeySet();
+            ring = ring.withShard();
+        } finally {
+            topology.writeLock().unlock();
+        }
+
+        int count = 0;
+        try {
+            HashRing target = ring;
+            for (int source = 0; source < added; source++) {
+                int from = source;
+                List<Isbn> leaving = transport.invoke(from, shard -> shard.streamItems(item -> true)
+                        .map(item -> ((BookItem) item).getIsbn())
+                        .filter(isbn -> target.shardFor(isbn) != from)
+                        .toList());
+                for (Isbn isbn : leaving) {
+                    if (move(isbn, from, added)) {
+                        count++;
+                    }
+                }
+            }
+        } finally {
+            topology.writeLock().lock();
+            try {
+                previous = null;
+                moved = null;
+            } finally {
+                topology.writeLock().unlock();
+            }
+        }
+        return count;
+    }
+
+    private boolean move(Isbn isbn, int from, int to) throws LibraryException {
+        Lock lock = moving.lockFor(isbn);
+        lock.lock();
+        try {
+            Optional<BookItem> book = transport.invoke(from, shard -> shard.lookupBookByIsbn(isbn));
+            if (book.isEmpty()) {
+                return false; // removed since the listing, maybe re-added on the new shard
+            }
+            if (moved.contains(isbn)) {
+                // addBook never puts a second copy on the new shard while the
+                // old one still has the book; keep both rather than drop loans
+                throw new LibraryException("ISBN " + isbn.value() + " is on shards " + from + " and " + to + ".");
+            }
+            BookItem source = book.get();
+            BookItem copy = new BookItem(isbn, source.getTitle(), source.getAuthor(),
+                    source.getGenre(), source.getYear(), source.getCopies());
+            List<LoanRecord> active = transport.invoke(from, shard -> shard.activeLoansOf(isbn));
+            List<String> waiting = transport.invoke(from, shard -> shard.holdQueueOf(isbn));
+            List<Reservation> reserved = transport.invoke(from, shard -> shard.reservationsFor(isbn));
+            // copy first, then drop: a concurrent listing may see the book twice, never zero times
+            transport.invoke(to, shard -> {
+                shard.attachBook(copy, active, waiting, reserved);
+                return null;
+            });
+            transport.invoke(from, shard -> {
+                shard.detachBook(isbn);
+                return null;
+            });
+            moved.add(isbn);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        transport.close();
+    }
+
+    private <T> T onBook(Isbn isbn, ShardTransport.Request<T> request) throws LibraryException {
+        topology.readLock().lock();
+        try {
+            HashRing previous = this.previous;
+            if (previous == null) {
+                return transport.invoke(ring.shardFor(isbn), request);
+            }
+            Lock lock = moving.lockFor(isbn);
+            lock.lock();
+            try {
+                int shard = moved.contains(isbn) ? ring.shardFor(isbn) : previous.shardFor(isbn);
+                return transport.invoke(shard, request);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            topology.readLock().unlock();
+        }
+    }
+
+    private interface Call<T> {
+        T run() throws LibraryException;
+    }
+
+    // for requests whose shard methods do not throw LibraryException
+    private static <T> T unchecked(Call<T> call) {
+        try {
+            return call.run();
+        } catch (LibraryException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // one result per shard, in shard order; the caller holds the topology read lock
+    private <T> List<T> gather(ShardTransport.Request<T> request) {
+        int shards = transport.shardCount();
+        List<CompletableFuture<T>> calls = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            calls.add(transport.call(shard, request));
+        }
+        List<T> results = new ArrayList<>(shards);
+        try {
+            for (CompletableFuture<T> call : calls) {
+                results.add(call.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    private <T> List<T> merged(ShardTransport.Request<List<T>> request, Comparator<? super T> order) {
+        topology.readLock().lock();
+        try {
+            return merge(gather(request), order);
+        } finally {
+            topology.readLock().unlock();
+        }
+    }
+
+    private static <T> List<T> sorted(List<T> list, Comparator<? super T> order) {
+        List<T> copy = new ArrayList<>(list);
+        copy.sort(order);
+        return copy;
+    }
+
+    // k-way merge of sorted lists, keeping one of any run of equal elements
+    private static <T> List<T> merge(List<List<T>> lists, Comparator<? super T> order) {
+        int total = 0;
+        for (List<T> list : lists) {
+            total += list.size();
+        }
+        List<T> out = new ArrayList<>(total);
+        // cursor: {list, position}
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, lists.size()),
+                (a, b) -> order.compare(lists.get(a[0]).get(a[1]), lists.get(b[0]).get(b[1])));
+        for (int i = 0; i < lists.size(); i++) {
+            if (!lists.get(i).isEmpty()) {
+                heads.add(new int[] {i, 0});
+            }
+        }
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<T> list = lists.get(head[0]);
+            T next = list.get(head[1]);
+            if (out.isEmpty() || order.compare(out.get(out.size() - 1), next) != 0) {
+                out.add(next);
+            }
+            if (++head[1] < list.size()) {
+                heads.add(head);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,21 @@
+package com.libraryapp;
+
+import java.util.Comparator;
+
+// One type-ahead completion: the field text as written, what it is, the ISBN
+// or member id it belongs to, and how often that book or member has borrowed.
+public record Suggestion(String text, Kind kind, String id, int popularity) {
+
+    public enum Kind {
+        TITLE,
+        AUTHOR,
+        MEMBER_ID,
+        MEMBER_NAME
+    }
+
+    // most borrowed first, then alphabetically so shards merge stably
+    static final Comparator<Suggestion> BEST_FIRST = Comparator.comparingInt(Suggestion::popularity).reversed()
+            .thenComparing(Suggestion::text)
+            .thenComparing(Suggestion::kind)
+            .thenComparing(Suggestion::id);
+}
@@ -0,0 +1,84 @@
+package com.libraryapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Deterministic generated books and members for benchmarks and simulations.
+// Book i always gets the same ISBN (979 prefix, valid check digit) and member
+// i the id "M<i>", so workloads can address them by index.
+public final class SyntheticCatalog {
+
+    private static final String[] WORDS = {
+            "java", "history", "garden", "river", "empire", "quantum", "silent", "market",
+            "dragon", "ocean", "theory", "winter", "journey", "design", "patterns", "mind",
+            "city", "shadow", "secret", "modern", "ancient", "digital", "wild", "light",
+            "science", "practice", "stone", "music", "children", "night", "storm", "code"
+    };
+    private static final String[] NAMES = {
+            "Ada", "Alan", "Grace", "Linus", "Barbara", "Donald", "Edsger", "Margaret",
+            "Ken", "Dennis", "Niklaus", "John", "Frances", "Tony", "Leslie", "Radia"
+    };
+
+    private SyntheticCatalog() {
+    }
+
+    public static Isbn isbn(int index) {
+        long body = 979_000_000_000L + index;
+        int sum = 0;
+        long digits = body;
+        for (int i = 0; i < 12; i++) {
+            sum += (int) (digits % 10) * (i % 2 == 0 ? 3 : 1);
+            digits /= 10;
+        }
+        return Isbn.of(body * 10 + (10 - sum % 10) % 10);
+    }
+
+    public static BookItem book(int index) {
+        SplittableRandom random = new SplittableRandom(index * 0x9E3779B97F4A7C15L);
+        String title = word(random) + " " + word(random) + " " + word(random) + " " + index;
+        String author = NAMES[random.nextInt(NAMES.length)] + " " + capitalize(word(random));
+        Genre genre = Genre.values()[random.nextInt(Genre.values().length)];
+        return new BookItem(isbn(index), capitalize(title), author, genre, 1900 + random.nextInt(126));
+    }
+
+    public static String memberId(int index) {
+        return "M" + index;
+    }
+
+    public static LibraryUser member(int index) {
+        return new StudentMember(memberId(index), NAMES[index % NAMES.length] + " " + index, "General");
+    }
+
+    // one word from the title vocabulary, for search workloads
+    public static String searchTerm(SplittableRandom random) {
+        return word(random);
+    }
+
+    public static Library create(int books, int members) {
+        List<LibraryUser> users = new ArrayList<>(members + 1);
+        users.add(new AdminMember("A001", "Admin Super"));
+        for (int i = 0; i < members; i++) {
+            users.add(member(i));
+        }
+        Library library = new Library(new ArrayList<>(), new ArrayList<>(), users);
+        List<BookItem> batch = new ArrayList<>(10_000);
+        for (int i = 0; i < books; i++) {
+            batch.add(book(i));
+            if (batch.size() == 10_000) {
+                library.importBooks(batch);
+                batch.clear();
+            }
+        }
+        library.importBooks(batch);
+        return library;
+    }
+
+    private static String word(SplittableRandom random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String capitalize(String s) {
+        return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+}
@@ -0,0 +1,461 @@
+package com.libraryapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Inverted index over book titles and authors. Not thread-safe on its own;
+// Library guards it with the catalog lock.
+//
+// Books get increasing document numbers, so every posting list is a sorted
+// int array. Removed books leave a hole that searches skip; the index is
+// rebuilt once holes outnumber live books.
+//
+// searchFuzzy ranks books by how closely the query matches a stretch of the
+// title or author. The gram postings give the candidates: a match within d
+// edits still shares all but at most GRAM * d of the query's grams. Only those
+// candidates are scored, most shared grams first, and scoring stops as soon as
+// no remaining candidate could make the top results.
+public final class TextIndex {
+
+    static final int GRAM = 3;
+    private static final double TITLE_WEIGHT = 1.0;
+    private static final double AUTHOR_WEIGHT = 0.8;
+    // share of the score for how much of the field the query covers
+    private static final double COVERAGE_WEIGHT = 0.2;
+    private static final int MAX_FUZZY_QUERY = 256;
+
+    private final Map<String, Postings> grams = new HashMap<>();
+    private final NavigableMap<String, Postings> tokens = new TreeMap<>();
+    private final Map<BookItem, Integer> docIds = new IdentityHashMap<>();
+    private BookItem[] docs = new BookItem[16];
+    private int nextDoc;
+    // Spare gram counters for collectFuzzy. Searches run concurrently under
+    // the read lock, so each takes one from a slot, or makes one when all
+    // are busy. Slots rather than a ThreadLocal keep this to one per
+    // concurrent search when every request runs on its own virtual thread.
+    private final AtomicReferenceArray<GramCounts> spareCounts =
+            new AtomicReferenceArray<>(Runtime.getRuntime().availableProcessors());
+
+    public void add(BookItem book) {
+        if (docIds.containsKey(book)) {
+            return;
+        }
+        if (nextDoc == docs.length) {
+            docs = Arrays.copyOf(docs, docs.length * 2);
+        }
+        int doc = nextDoc++;
+        docs[doc] = book;
+        docIds.put(book, doc);
+        for (String key : gramsOf(book)) {
+            grams.computeIfAbsent(key, k -> new Postings()).add(doc);
+        }
+        for (String key : tokensOf(book)) {
+            tokens.computeIfAbsent(key, k -> new Postings()).add(doc);
+        }
+    }
+
+    public void remove(BookItem book) {
+        Integer doc = docIds.remove(book);
+        if (doc == null) {
+            return;
+        }
+        docs[doc] = null;
+        int holes = nextDoc - docIds.size();
+        if (holes > 1024 && holes > docIds.size()) {
+            rebuild();
+        }
+    }
+
+    // case-insensitive substring match on title or author, ordered by title;
+    // an empty query matches every book
+    public List<BookItem> search(String query) {
+        String q = normalize(query).trim();
+        List<BookItem> result;
+        if (q.isEmpty()) {
+            result = allBooks();
+        } else {
+            result = q.length() < GRAM ? searchTokenPrefix(q) : searchGrams(q);
+        }
+        result.sort(Comparator.comparing(BookItem::getTitle));
+        return result;
+    }
+
+    // typo-tolerant title/author search, best first, at most limit hits
+    public List<SearchHit> searchFuzzy(String query, int limit) {
+        String q = normalize(query).trim();
+        if (q.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        if (q.length() > MAX_FUZZY_QUERY) {
+            q = q.substring(0, MAX_FUZZY_QUERY);
+        }
+        // worst hit on top, so it is the one displaced
+        PriorityQueue<SearchHit> top = new PriorityQueue<>(limit + 1, SearchHit.BEST_FIRST.reversed());
+        Scorer scorer = new Scorer(q);
+        if (q.length() < GRAM) {
+            // too short to carry a typo: any word starting with it
+            for (BookItem book : searchTokenPrefix(q)) {
+                offer(top, limit, scorer.score(book, 0, top.size() == limit ? top.peek().score() : 0));
+            }
+        } else {
+            collectFuzzy(q, scorer, limit, top);
+        }
+        List<SearchHit> hits = new ArrayList<>(top);
+        hits.sort(SearchHit.BEST_FIRST);
+        return hits;
+    }
+
+    private void collectFuzzy(String q, Scorer scorer, int limit, PriorityQueue<SearchHit> top) {
+        Set<String> queryGrams = new LinkedHashSet<>();
+        addGrams(queryGrams, q);
+        int minShared = Math.max(1, queryGrams.size() - GRAM * scorer.maxEdits);
+
+        GramCounts counts = takeCounts();
+        try {
+            scoreCandidates(queryGrams, minShared, counts, scorer, limit, top);
+        } finally {
+            counts.clear();
+            returnCounts(counts);
+        }
+    }
+
+    private void scoreCandidates(Set<String> queryGrams, int minShared, GramCounts counts,
+            Scorer scorer, int limit, PriorityQueue<SearchHit> top) {
+        int n = queryGrams.size();
+        short[] shared = counts.shared;
+        int[] candidates = new int[16];
+        int count = 0;
+        for (String gram : queryGrams) {
+            Postings posting = grams.get(gram);
+            if (posting == null) {
+                continue;
+            }
+            for (int i = 0; i < posting.size; i++) {
+                int doc = posting.docs[i];
+                if (counts.increment(doc) == minShared && docs[doc] != null) {
+                    if (count == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, count * 2);
+                    }
+                    candidates[count++] = doc;
+                }
+            }
+        }
+
+        // fewest missing grams first, since those may score best: a counting
+        // sort, as missing is at most n
+        int[] starts = new int[n + 2];
+        for (int i = 0; i < count; i++) {
+            starts[n - shared[candidates[i]] + 1]++;
+        }
+        for (int m = 1; m < starts.length; m++) {
+            starts[m] += starts[m - 1];
+        }
+        int[] ordered = new int[count];
+        for (int i = 0; i < count; i++) {
+            int doc = candidates[i];
+            ordered[starts[n - shared[doc]]++] = doc;
+        }
+        for (int doc : ordered) {
+            int missing = n - shared[doc];
+            double floor = top.size() == limit ? top.peek().score() : 0;
+            if (scorer.bound(missing) < floor) {
+                break;
+            }
+            offer(top, limit, scorer.score(docs[doc], missing, floor));
+        }
+    }
+
+    private GramCounts takeCounts() {
+        GramCounts counts = null;
+        for (int i = 0; i < spareCounts.length() && counts == null; i++) {
+            counts = spareCounts.getAndSet(i, null);
+        }
+        if (counts == null) {
+            counts = new GramCounts();
+        }
+        counts.ensureCapacity(nextDoc);
+        return counts;
+    }
+
+    private void returnCounts(GramCounts counts) {
+        for (int i = 0; i < spareCounts.length(); i++) {
+            if (spareCounts.compareAndSet(i, null, counts)) {
+                return;
+            }
+        }
+    }
+
+    // Shared-gram count per document. Only the documents a query touched are
+    // zeroed afterwards, so a query costs nothing in proportion to the catalog.
+    private static final class GramCounts {
+
+        short[] shared = new short[0];
+        private int[] touched = new int[64];
+        private int touchedCount;
+
+        void ensureCapacity(int docs) {
+            if (shared.length < docs) {
+                shared = new short[Math.max(docs, shared.length * 2)];
+            }
+        }
+
+        int increment(int doc) {
+            if (shared[doc] == 0) {
+                if (touchedCount == touched.length) {
+                    touched = Arrays.copyOf(touched, touchedCount * 2);
+                }
+                touched[touchedCount++] = doc;
+            }
+            return ++shared[doc];
+        }
+
+        void clear() {
+            for (int i = 0; i < touchedCount; i++) {
+                shared[touched[i]] = 0;
+            }
+            touchedCount = 0;
+        }
+    }
+
+    private static void offer(PriorityQueue<SearchHit> top, int limit, SearchHit hit) {
+        if (hit == null) {
+            return;
+        }
+        if (top.size() < limit) {
+            top.add(hit);
+        } else if (SearchHit.BEST_FIRST.compare(hit, top.peek()) < 0) {
+            top.poll();
+            top.add(hit);
+        }
+    }
+
+    private List<BookItem> searchGrams(String q) {
+        // walk the rarest gram's postings and probe the others, then verify
+        List<Postings> postings = new ArrayList<>();
+        Postings smallest = null;
+        for (int i = 0; i + GRAM <= q.length(); i++) {
+            Postings posting = grams.get(q.substring(i, i + GRAM));
+            if (posting == null) {
+                return new ArrayList<>();
+            }
+            postings.add(posting);
+            if (smallest == null || posting.size < smallest.size) {
+                smallest = posting;
+            }
+        }
+        List<BookItem> result = new ArrayList<>();
+        for (int i = 0; i < smallest.size; i++) {
+            int doc = smallest.docs[i];
+            BookItem book = docs[doc];
+            if (book != null && inAll(postings, doc)
+                    && (containsIgnoreCase(book.getTitle(), q) || containsIgnoreCase(book.getAuthor(), q))) {
+                result.add(book);
+            }
+        }
+        return result;
+    }
+
+    private List<BookItem> allBooks() {
+        List<BookItem> result = new ArrayList<>(docIds.size());
+        for (int doc = 0; doc < nextDoc; doc++) {
+            if (docs[doc] != null) {
+                result.add(docs[doc]);
+            }
+        }
+        return result;
+    }
+
+    // queries shorter than a gram match the start of any word
+    private List<BookItem> searchTokenPrefix(String q) {
+        BitSet matches = new BitSet();
+        for (Postings posting : tokens.subMap(q, true, q + Character.MAX_VALUE, false).values()) {
+            for (int i = 0; i < posting.size; i++) {
+                matches.set(posting.docs[i]);
+            }
+        }
+        List<BookItem> result = new ArrayList<>(matches.cardinality());
+        for (int doc = matches.nextSetBit(0); doc >= 0; doc = matches.nextSetBit(doc + 1)) {
+            if (docs[doc] != null) {
+                result.add(docs[doc]);
+            }
+        }
+        return result;
+    }
+
+    private void rebuild() {
+        BookItem[] live = Arrays.copyOf(docs, nextDoc);
+        grams.clear();
+        tokens.clear();
+        docIds.clear();
+        docs = new BookItem[Math.max(16, Integer.highestOneBit(Math.max(1, nextDoc)) << 1)];
+        nextDoc = 0;
+        for (BookItem book : live) {
+            if (book != null) {
+                add(book);
+            }
+        }
+    }
+
+    private static boolean inAll(List<Postings> postings, int doc) {
+        for (Postings posting : postings) {
+            if (!posting.contains(doc)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean containsIgnoreCase(String text, String lowerNeedle) {
+        int max = text.length() - lowerNeedle.length();
+        for (int i = 0; i <= max; i++) {
+            if (text.regionMatches(true, i, lowerNeedle, 0, lowerNeedle.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> gramsOf(BookItem book) {
+        Set<String> keys = new HashSet<>();
+        addGrams(keys, normalize(book.getTitle()));
+        addGrams(keys, normalize(book.getAuthor()));
+        return keys;
+    }
+
+    private static void addGrams(Set<String> keys, String text) {
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            keys.add(text.substring(i, i + GRAM));
+        }
+    }
+
+    private static Set<String> tokensOf(BookItem book) {
+        Set<String> keys = new HashSet<>();
+        addTokens(keys, normalize(book.getTitle()));
+        addTokens(keys, normalize(book.getAuthor()));
+        return keys;
+    }
+
+    // words are maximal runs of letters and digits
+    static void addTokens(Set<String> keys, String text) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                keys.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+
+    static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    // Scores one query against books, reusing its edit-distance rows.
+    private static final class Scorer {
+
+        private final String query;
+        private final int maxEdits;
+        private final int[] previous;
+        private final int[] current;
+
+        Scorer(String query) {
+            this.query = query;
+            int length = query.length();
+            this.maxEdits = length < 8 ? 1 : length < 20 ? 2 : 3;
+            this.previous = new int[length + 1];
+            this.current = new int[length + 1];
+        }
+
+        // null when neither field is within maxEdits or the book cannot reach
+        // floor; a field is only scanned if its length leaves it a chance
+        SearchHit score(BookItem book, int missingGrams, double floor) {
+            int minEdits = (missingGrams + GRAM - 1) / GRAM;
+            String title = book.getTitle();
+            String author = book.getAuthor();
+            double score = 0;
+            if (score(minEdits, title.length(), TITLE_WEIGHT) >= floor) {
+                score = fieldScore(title, TITLE_WEIGHT);
+            }
+            if (score(minEdits, author.length(), AUTHOR_WEIGHT) >= Math.max(floor, score)) {
+                score = Math.max(score, fieldScore(author, AUTHOR_WEIGHT));
+            }
+            return score > 0 && score >= floor ? new SearchHit(book, score) : null;
+        }
+
+        // the best score a book missing this many query grams could reach
+        double bound(int missingGrams) {
+            return score((missingGrams + GRAM - 1) / GRAM, 0, TITLE_WEIGHT);
+        }
+
+        private double fieldScore(String field, double weight) {
+            int edits = substringDistance(field);
+            return edits > maxEdits ? 0 : score(edits, field.length(), weight);
+        }
+
+        // a field length of 0 stands for "unknown" and assumes full coverage
+        private double score(int edits, int fieldLength, double weight) {
+            double coverage = fieldLength == 0 ? 1.0 : Math.min(1.0, (double) query.length() / fieldLength);
+            return weight * (1 - (double) edits / query.length()) * (1 - COVERAGE_WEIGHT + COVERAGE_WEIGHT * coverage);
+        }
+
+        // fewest edits turning the query into some substring of text (Sellers),
+        // ignoring case
+        private int substringDistance(String text) {
+            int length = query.length();
+            int[] prev = previous;
+            int[] cur = current;
+            for (int i = 0; i <= length; i++) {
+                prev[i] = i;
+            }
+            int best = length;
+            for (int j = 0; j < text.length(); j++) {
+                char c = Character.toLowerCase(text.charAt(j));
+                cur[0] = 0; // a match may start anywhere
+                for (int i = 1; i <= length; i++) {
+                    int substitute = prev[i - 1] + (query.charAt(i - 1) == c ? 0 : 1);
+                    cur[i] = Math.min(substitute, Math.min(prev[i], cur[i - 1]) + 1);
+                }
+                best = Math.min(best, cur[length]);
+                int[] swap = prev;
+                prev = cur;
+                cur = swap;
+            }
+            return best;
+        }
+    }
+
+    // sorted, append-only list of document numbers
+    private static final class Postings {
+
+        private int[] docs = new int[4];
+        private int size;
+
+        void add(int doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+
+        boolean contains(int doc) {
+            return Arrays.binarySearch(docs, 0, size, doc) >= 0;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.libraryapp;
+
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Epoch clock for catalog versions. A writer stamps its change with the epoch
+// it entered, inside a short enter/exit section. Opening a snapshot advances
+// the epoch and waits only for writers still inside the old epoch, so every
+// change is either wholly in the snapshot or wholly after it, and writers
+// never wait for readers.
+//
+// Readers are registered by version until closed. A writer that replaces a
+// version may drop the older ones once no open reader is at or before them.
+final class VersionClock {
+
+    private volatile long epoch = 1;
+    // writers inside an epoch, by parity: a new epoch only starts after the
+    // one two back has drained, so the two counters never mix
+    private final LongAdder[] writers = {new LongAdder(), new LongAdder()};
+    private final TreeMap<Long, Integer> readers = new TreeMap<>(); // guarded by this
+    private volatile long oldestReader = Long.MAX_VALUE;
+
+    long enter() {
+        while (true) {
+            long e = epoch;
+            LongAdder inside = writers[(int) (e & 1)];
+            inside.increment();
+            if (epoch == e) {
+                return e;
+            }
+            inside.decrement();
+        }
+    }
+
+    void exit(long e) {
+        writers[(int) (e & 1)].decrement();
+    }
+
+    // Returns a version that no writer will stamp again, registered as read
+    // until closeSnapshot.
+    synchronized long openSnapshot() {
+        long version = epoch;
+        readers.merge(version, 1, Integer::sum);
+        oldestReader = readers.firstKey();
+        epoch = version + 1;
+        LongAdder inside = writers[(int) (version & 1)];
+        for (int spins = 0; inside.sum() != 0; spins++) {
+            if (spins < 100) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        return version;
+    }
+
+    synchronized void closeSnapshot(long version) {
+        readers.computeIfPresent(version, (v, count) -> count == 1 ? null : count - 1);
+        oldestReader = readers.isEmpty() ? Long.MAX_VALUE : readers.firstKey();
+    }
+
+    // Long.MAX_VALUE when nobody reads
+    long oldestReader() {
+        return oldestReader;
+    }
+
+    // One value in a chain of versions, newest first. push keeps only what an
+    // open reader could still ask for.
+    static final class Version<T> {
+
+        final long stamp;
+        final T value;
+        volatile Version<T> older;
+
+        private Version(long stamp, T value, Version<T> older) {
+            this.stamp = stamp;
+            this.value = value;
+            this.older = older;
+        }
+
+        static <T> Version<T> initial(T value) {
+            return new Version<>(0, value, null);
+        }
+
+        // the value as of the given version
+        T at(long version) {
+            Version<T> v = this;
+            while (v.stamp > version && v.older != null) {
+                v = v.older;
+            }
+            return v.value;
+        }
+    }
+
+    // A new head for a chain, stamped with the caller's epoch. A version from
+    // the same epoch is never visible on its own, and nothing below the version
+    // the oldest reader sees is needed, so both are dropped.
+    <T> Version<T> push(Version<T> head, T value, long e) {
+        long oldest = oldestReader;
+        Version<T> kept = null;
+        if (oldest != Long.MAX_VALUE) {
+            kept = head.stamp == e ? head.older : head;
+            if (kept != null && kept.stamp <= oldest) {
+                kept.older = null;
+            }
+        }
+        return new Version<>(e, value, kept);
+    }
+}
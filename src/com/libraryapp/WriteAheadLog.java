@@ -0,0 +1,351 @@
+package com.libraryapp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Segmented append-only log of length + CRC32 framed records.
+// Appends only copy into a buffer; a committer thread writes and fsyncs
+// everything appended since its last pass in one go (group commit). A record
+// is durable once awaitDurable(seq) for its sequence number returns; until
+// then a crash may lose it.
+public final class WriteAheadLog implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int FRAME_HEADER = 8;
+    private static final boolean WINDOWS = System.getProperty("os.name").startsWith("Windows");
+
+    private final Path dir;
+    private final long maxSegmentBytes;
+    private final long commitIntervalNanos;
+
+    // append side
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasData = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+    private FrameBuffer pending = new FrameBuffer();
+    private FrameBuffer spare = new FrameBuffer();
+    private long appendedSeq;
+    private long durableSeq;
+    private IOException failure;
+    private boolean closed;
+
+    // file side, only touched with ioLock held
+    private final ReentrantLock ioLock = new ReentrantLock();
+    private FileChannel channel;
+    private long segmentIndex;
+    private long segmentBytes;
+
+    private final Thread committer;
+
+    public WriteAheadLog(Path dir, long maxSegmentBytes, long commitIntervalMillis) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMillis);
+        List<Long> existing = segmentIndexes(dir);
+        // never append to an old segment: its tail may be torn
+        this.segmentIndex = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+        this.channel = openSegment(segmentIndex);
+        this.committer = new Thread(this::commitLoop, "wal-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    public long append(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        lock.lock();
+        try {
+            ensureWritable();
+            boolean wasEmpty = pending.size() == 0;
+            pending.writeInt(payload.length);
+            pending.writeInt((int) crc.getValue());
+            pending.write(payload, 0, payload.length);
+            if (wasEmpty) {
+                hasData.signal();
+            }
+            return ++appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void awaitDurable(long seq) throws IOException {
+        lock.lock();
+        try {
+            while (durableSeq < seq && failure == null) {
+                hasData.signal();
+                durable.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // blocks until everything appended so far is on disk
+    public void sync() throws IOException {
+        long seq;
+        lock.lock();
+        try {
+            seq = appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+    }
+
+    // flushes and starts a new segment; returns the index of the new segment
+    public long roll() throws IOException {
+        ioLock.lock();
+        try {
+            flush();
+            rollSegment();
+            return segmentIndex;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    public void replay(long fromSegment, Consumer<ByteBuffer> handler) throws IOException {
+        for (long index : segmentIndexes(dir)) {
+            if (index >= fromSegment && index != currentSegment()) {
+                replaySegment(segmentPath(index), handler);
+            }
+        }
+    }
+
+    public void deleteSegmentsBefore(long index) throws IOException {
+        for (long existing : segmentIndexes(dir)) {
+            if (existing < index) {
+                Files.deleteIfExists(segmentPath(existing));
+            }
+        }
+    }
+
+    public long currentSegment() {
+        ioLock.lock();
+        try {
+            return segmentIndex;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            hasData.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ioLock.lock();
+        try {
+            flush();
+            channel.close();
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    private void commitLoop() {
+        while (true) {
+            lock.lock();
+            try {
+                while (pending.size() == 0 && !closed) {
+                    hasData.awaitUninterruptibly();
+                }
+                if (closed) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (commitIntervalNanos > 0) {
+                // give concurrent writers a moment to join this batch
+                LockSupport.parkNanos(commitIntervalNanos);
+            }
+            ioLock.lock();
+            try {
+                flush();
+            } catch (IOException e) {
+                fail(e);
+                return;
+            } finally {
+                ioLock.unlock();
+            }
+        }
+    }
+
+    // caller holds ioLock
+    private void flush() throws IOException {
+        FrameBuffer batch;
+        long upTo;
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            if (pending.size() == 0) {
+                return;
+            }
+            batch = pending;
+            pending = spare;
+            spare = batch;
+            upTo = appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+        ByteBuffer bytes = batch.asByteBuffer();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        channel.force(false);
+        segmentBytes += batch.size();
+        batch.reset();
+        lock.lock();
+        try {
+            durableSeq = upTo;
+            durable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (segmentBytes >= maxSegmentBytes) {
+            rollSegment();
+        }
+    }
+
+    // caller holds ioLock
+    private void rollSegment() throws IOException {
+        channel.close();
+        segmentIndex++;
+        segmentBytes = 0;
+        channel = openSegment(segmentIndex);
+    }
+
+    private void fail(IOException e) {
+        lock.lock();
+        try {
+            failure = e;
+            durable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ensureWritable() {
+        if (closed) {
+            throw new IllegalStateException("Log is closed");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Log is no longer writable", failure);
+        }
+    }
+
+    // the new file's directory entry is synced too, or a crash could lose
+    // the whole segment along with records already fsynced into it
+    private FileChannel openSegment(long index) throws IOException {
+        FileChannel segment = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            syncDirectory(dir);
+        } catch (IOException e) {
+            segment.close();
+            throw e;
+        }
+        return segment;
+    }
+
+    // Makes files created, renamed or deleted in dir survive a crash. Windows
+    // cannot open a directory as a channel and commits entries on its own.
+    static void syncDirectory(Path dir) throws IOException {
+        if (WINDOWS) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return dir.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private static void replaySegment(Path segment, Consumer<ByteBuffer> handler) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment));
+        CRC32 crc = new CRC32();
+        while (data.remaining() >= FRAME_HEADER) {
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (length < 0 || length > data.remaining()) {
+                return; // torn tail from a crash mid-write
+            }
+            ByteBuffer payload = data.slice(data.position(), length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                return;
+            }
+            handler.accept(payload);
+            data.position(data.position() + length);
+        }
+    }
+
+    private static List<Long> segmentIndexes(Path dir) throws IOException {
+        List<Long> indexes = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))
+                    .forEach(index -> indexes.add(Long.parseLong(index)));
+        }
+        indexes.sort(null);
+        return indexes;
+    }
+
+    private static final class FrameBuffer extends ByteArrayOutputStream {
+
+        FrameBuffer() {
+            super(64 * 1024);
+        }
+
+        void writeInt(int v) {
+            write(v >>> 24);
+            write(v >>> 16);
+            write(v >>> 8);
+            write(v);
+        }
+
+        ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.libraryapp;
+
+import java.util.SplittableRandom;
+
+// Draws ranks 0..n-1 with probability proportional to 1 / (rank + 1)^s, using
+// rejection-inversion sampling (Hormann and Derflinger), so it needs O(1)
+// memory even for tens of millions of ranks.
+public final class ZipfGenerator {
+
+    private final int n;
+    private final double s;
+    private final double hIntegralX1;
+    private final double hIntegralN;
+    private final double threshold;
+
+    public ZipfGenerator(int n, double s) {
+        if (n <= 0 || s <= 0) {
+            throw new IllegalArgumentException("Zipf needs n > 0 and s > 0");
+        }
+        this.n = n;
+        this.s = s;
+        this.hIntegralX1 = hIntegral(1.5) - 1.0;
+        this.hIntegralN = hIntegral(n + 0.5);
+        this.threshold = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2.0));
+    }
+
+    public int next(SplittableRandom random) {
+        while (true) {
+            double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1) {
+                k = 1;
+            } else if (k > n) {
+                k = n;
+            }
+            if (k - x <= threshold || u >= hIntegral(k + 0.5) - h(k)) {
+                return k - 1;
+            }
+        }
+    }
+
+    public int size() {
+        return n;
+    }
+
+    private double h(double x) {
+        return Math.exp(-s * Math.log(x));
+    }
+
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return helper2((1.0 - s) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = x * (1.0 - s);
+        if (t < -1.0) {
+            t = -1.0; // guards against rounding just below the domain
+        }
+        return Math.exp(helper1(t) * x);
+    }
+
+    // log(1 + x) / x, stable near 0
+    private static double helper1(double x) {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+    }
+
+    // (exp(x) - 1) / x, stable near 0
+    private static double helper2(double x) {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1.0 + x * 0.5 * (1.0 + x * (1.0 / 3.0) * (1.0 + 0.25 * x));
+    }
+}
@@ -0,0 +1,75 @@
+package com.libraryapp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+// Parsing and normalization of ISBN-10 and ISBN-13 text to one 13-digit number.
+class IsbnTest {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "9780306406157      | 9780306406157",
+            "978-0-306-40615-7  | 9780306406157",
+            "0306406152         | 9780306406157",
+            "0-306-40615-2      | 9780306406157",
+            "0134685997         | 9780134685991",
+            "080442957X         | 9780804429573",
+            "080442957x         | 9780804429573",
+            "0-8044-2957-X      | 9780804429573",
+            "'  9780134685991 ' | 9780134685991",
+            "' 0-306-40615-2'   | 9780306406157",
+            "9791234567896      | 9791234567896",
+    })
+    void parsesToTheCanonicalIsbn13(String text, String canonical) {
+        Isbn isbn = new Isbn(text);
+        assertEquals(canonical, isbn.value());
+        assertEquals(Long.parseLong(canonical), isbn.toLong());
+        assertEquals(new Isbn(canonical), isbn);
+        assertEquals(new Isbn(canonical).hashCode(), isbn.hashCode());
+        assertEquals(isbn, Isbn.of(isbn.toLong()));
+        assertTrue(Isbn.isValid(text));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "0306406153",      // ISBN-10 checksum
+            "9780306406158",   // ISBN-13 checksum
+            "0804429570",      // needs X as its check digit
+            "X306406152",      // X anywhere but last
+            "08044295X7",
+            "abcdefghij",
+            "030640615",       // 9 digits
+            "97803064061570",  // 14 digits
+            "978030640615",    // 12 digits
+            "978 0306406157",  // only surrounding spaces are stripped
+            "978_0306406157",
+            "",
+            "   ",
+    })
+    void rejectsInvalidText(String text) {
+        assertThrows(IllegalArgumentException.class, () -> new Isbn(text));
+        assertThrows(IllegalArgumentException.class, () -> Isbn.interned(text));
+        assertFalse(Isbn.isValid(text));
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {9780306406158L, -9780306406157L, 97803064061570L})
+    void rejectsInvalidNumbers(long code) {
+        assertThrows(IllegalArgumentException.class, () -> Isbn.of(code));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"9780306406157", "0-306-40615-2"})
+    void internedSharesOneInstance(String text) {
+        Isbn first = Isbn.interned(text);
+        assertSame(first, Isbn.interned("978-0-306-40615-7"));
+        assertEquals(new Isbn(text), first);
+    }
+}
@@ -0,0 +1,251 @@
+package com.libraryapp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+// Hammers borrow and return from many threads and checks that no copy is ever
+// lent twice and that copy counts and loans agree afterwards.
+@Timeout(value = 120, unit = TimeUnit.SECONDS)
+class LibraryConcurrencyTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 1);
+    private static final int THREADS = 8;
+
+    private interface Body {
+        void run(int thread, SplittableRandom random) throws Exception;
+    }
+
+    // Listeners run while the mutating thread still owns the copy: a copy is
+    // claimed before onBorrowed and shelved after onReturned.
+    private static final class CopyTracker implements LibraryListener {
+        final Set<String> lent = ConcurrentHashMap.newKeySet();
+        final List<String> violations = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onBorrowed(LoanRecord record) {
+            if (!lent.add(key(record))) {
+                violations.add("lent twice: " + record);
+            }
+        }
+
+        @Override
+        public void onReturned(LoanRecord record, LocalDate returnDate) {
+            if (!lent.remove(key(record))) {
+                violations.add("returned while not lent: " + record);
+            }
+        }
+
+        private static String key(LoanRecord record) {
+            return record.isbn().value() + "#" + record.copyNumber();
+        }
+    }
+
+    @Test
+    void sharedTitlesAreNeverLentTwice() throws Exception {
+        Library library = library(16, 3, 32);
+        CopyTracker tracker = new CopyTracker();
+        library.addListener(tracker);
+
+        hammer(20_000, (thread, random) -> {
+            String member = SyntheticCatalog.memberId(random.nextInt(32));
+            Isbn isbn = SyntheticCatalog.isbn(random.nextInt(16));
+            if (random.nextBoolean()) {
+                library.tryBorrow(member, isbn, TODAY);
+            } else {
+                library.tryReturn(member, isbn, TODAY);
+            }
+        });
+
+        assertEquals(List.of(), tracker.violations);
+        assertEquals(tracker.lent.size(), library.streamLoans().count());
+        assertConsistent(library);
+    }
+
+    @Test
+    void disjointTitlesAlwaysSucceed() throws Exception {
+        Library library = library(THREADS * 50, 1, THREADS);
+        AtomicInteger failures = new AtomicInteger();
+
+        hammer(10_000, (thread, random) -> {
+            String member = SyntheticCatalog.memberId(thread);
+            Isbn isbn = SyntheticCatalog.isbn(thread + random.nextInt(50) * THREADS);
+            if (!(library.tryBorrow(member, isbn, TODAY) instanceof LoanRecord)
+                    || !(library.tryReturn(member, isbn, TODAY) instanceof LoanRecord)) {
+                failures.incrementAndGet();
+            }
+        });
+
+        assertEquals(0, failures.get());
+        assertEquals(0, library.streamLoans().count());
+        assertConsistent(library);
+    }
+
+    @Test
+    void batchesStayAllOrNothingAgainstSingleBorrows() throws Exception {
+        Library library = library(4, 4, 4);
+        CopyTracker tracker = new CopyTracker();
+        library.addListener(tracker);
+        List<String> partial = Collections.synchronizedList(new ArrayList<>());
+
+        hammer(5_000, (thread, random) -> {
+            // pairs of threads share a member, so batches race single calls on the same loans
+            String member = SyntheticCatalog.memberId(thread / 2);
+            List<Isbn> isbns = List.of(SyntheticCatalog.isbn(random.nextInt(4)), SyntheticCatalog.isbn(random.nextInt(4)));
+            switch (random.nextInt(4)) {
+                case 0 -> {
+                    BatchResult result = library.borrowBooks(member, distinct(isbns), TODAY);
+                    if (result.committed() && !result.outcomes().stream().allMatch(o -> o instanceof LoanRecord)) {
+                        partial.add("committed " + result.outcomes());
+                    }
+                }
+                case 1 -> {
+                    try {
+                        BatchResult result = library.returnBooks(member, distinct(isbns), TODAY);
+                        if (result.committed() && !result.outcomes().stream().allMatch(o -> o instanceof LoanRecord)) {
+                            partial.add("committed " + result.outcomes());
+                        }
+                    } catch (IllegalStateException e) {
+                        // a rollback that could not be undone is reported, and nothing leaks
+                    }
+                }
+                case 2 -> library.tryBorrow(member, isbns.get(0), TODAY);
+                default -> library.tryReturn(member, isbns.get(0), TODAY);
+            }
+        });
+
+        assertEquals(List.of(), partial);
+        assertEquals(List.of(), tracker.violations);
+        assertConsistent(library);
+    }
+
+    // Borrows update copy counts in place while no snapshot is open and chain
+    // versions while one is; either way an open snapshot's counts never move.
+    @Test
+    void snapshotCountsStayPutUnderBorrows() throws Exception {
+        Library library = library(16, 3, 32);
+        List<String> moved = Collections.synchronizedList(new ArrayList<>());
+
+        hammer(5_000, (thread, random) -> {
+            if (thread == 0) {
+                try (CatalogSnapshot snapshot = library.snapshot()) {
+                    int[] seen = new int[16];
+                    for (int i = 0; i < 16; i++) {
+                        seen[i] = snapshot.availableCopies(book(library, i));
+                    }
+                    Thread.yield();
+                    for (int i = 0; i < 16; i++) {
+                        int now = snapshot.availableCopies(book(library, i));
+                        if (now != seen[i] || snapshot.copies(book(library, i)) != 3) {
+                            moved.add("title " + i + ": " + seen[i] + " then " + now);
+                        }
+                    }
+                }
+                return;
+            }
+            String member = SyntheticCatalog.memberId(random.nextInt(32));
+            Isbn isbn = SyntheticCatalog.isbn(random.nextInt(16));
+            if (random.nextBoolean()) {
+                library.tryBorrow(member, isbn, TODAY);
+            } else {
+                library.tryReturn(member, isbn, TODAY);
+            }
+        });
+
+        assertEquals(List.of(), moved);
+        try (CatalogSnapshot snapshot = library.snapshot()) {
+            for (int i = 0; i < 16; i++) {
+                BookItem book = book(library, i);
+                assertEquals(book.getAvailableCopies(), snapshot.availableCopies(book));
+            }
+        }
+        assertConsistent(library);
+    }
+
+    private static BookItem book(Library library, int index) {
+        return library.lookupBookByIsbn(SyntheticCatalog.isbn(index)).orElseThrow();
+    }
+
+    private static List<Isbn> distinct(List<Isbn> isbns) {
+        return isbns.get(0).equals(isbns.get(1)) ? isbns.subList(0, 1) : isbns;
+    }
+
+    // Every title's free copies plus its active loans make up all its copies,
+    // and no copy or member-title pair has two loans.
+    private static void assertConsistent(Library library) {
+        Map<Isbn, Integer> onLoan = new HashMap<>();
+        Set<String> copies = new HashSet<>();
+        Set<String> memberTitles = new HashSet<>();
+        library.streamLoans().forEach(loan -> {
+            onLoan.merge(loan.isbn(), 1, Integer::sum);
+            assertTrue(copies.add(loan.isbn().value() + "#" + loan.copyNumber()), "copy lent twice: " + loan);
+            assertTrue(memberTitles.add(loan.memberId() + " " + loan.isbn().value()), "title lent twice: " + loan);
+        });
+        library.streamItems(item -> true).forEach(item -> {
+            BookItem book = assertInstanceOf(BookItem.class, item);
+            int lent = onLoan.getOrDefault(book.getIsbn(), 0);
+            assertEquals(book.getCopies() - lent, book.getAvailableCopies(), "copy counts of " + book.getIsbn());
+            for (int copy = 1; copy <= book.getCopies(); copy++) {
+                assertEquals(copies.contains(book.getIsbn().value() + "#" + copy), book.isCopyLent(copy),
+                        "copy " + copy + " of " + book.getIsbn());
+            }
+        });
+    }
+
+    private static Library library(int titles, int copiesEach, int members) {
+        List<LibraryItem> books = new ArrayList<>();
+        for (int i = 0; i < titles; i++) {
+            BookItem book = SyntheticCatalog.book(i);
+            books.add(new BookItem(book.getIsbn(), book.getTitle(), book.getAuthor(), book.getGenre(),
+                    book.getYear(), copiesEach));
+        }
+        List<LibraryUser> users = new ArrayList<>();
+        for (int i = 0; i < members; i++) {
+            users.add(SyntheticCatalog.member(i));
+        }
+        return new Library(books, new ArrayList<>(), users);
+    }
+
+    // runs body iterations times on each of THREADS threads, all started together
+    private static void hammer(int iterations, Body body) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            threads.add(Thread.ofPlatform().start(() -> {
+                SplittableRandom random = new SplittableRandom(thread * 7919L);
+                try {
+                    start.await();
+                    for (int i = 0; i < iterations; i++) {
+                        body.run(thread, random);
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(List.of(), errors);
+    }
+}
@@ -0,0 +1,129 @@
+package com.libraryapp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+// Subscriptions on a small ring: ordering across laps, DROP accounting and
+// the drain on close.
+@Timeout(value = 60, unit = TimeUnit.SECONDS)
+class LibraryEventStreamTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 1);
+
+    // what a handler saw; the LibraryEvent itself is a reused ring slot
+    private record Seen(long sequence, LibraryEvent.Type type, Isbn isbn) {
+    }
+
+    // Each thread borrows and returns its own titles, so per title the events
+    // must alternate BORROWED, RETURNED, and every subscriber sees them all.
+    @Test
+    void everySubscriberSeesEveryEventInOrder() throws Exception {
+        Library library = SyntheticCatalog.create(64, 4);
+        List<Seen> first = Collections.synchronizedList(new ArrayList<>());
+        List<Seen> second = Collections.synchronizedList(new ArrayList<>());
+        int threads = 4;
+        int rounds = 2_000;
+
+        try (LibraryEventStream stream = LibraryEventStream.attach(library, 64,
+                LibraryEventStream.Backpressure.BLOCK, LibraryEventStream.WaitStrategy.YIELDING)) {
+            stream.subscribe("first", (event, endOfBatch) -> first.add(seen(event)));
+            stream.subscribe("second", (event, endOfBatch) -> second.add(seen(event)));
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                workers.add(Thread.ofPlatform().start(() -> {
+                    String member = SyntheticCatalog.memberId(thread);
+                    for (int i = 0; i < rounds; i++) {
+                        Isbn isbn = SyntheticCatalog.isbn(thread + threads * (i % 16));
+                        library.tryBorrow(member, isbn, TODAY);
+                        library.tryReturn(member, isbn, TODAY);
+                    }
+                }));
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+
+        assertEquals(2L * threads * rounds, first.size());
+        assertEquals(first, second);
+        Map<Isbn, LibraryEvent.Type> last = new HashMap<>();
+        for (int i = 0; i < first.size(); i++) {
+            Seen seen = first.get(i);
+            assertEquals(i, seen.sequence());
+            LibraryEvent.Type previous = last.put(seen.isbn(), seen.type());
+            assertTrue(previous != seen.type(), "two " + seen.type() + " in a row for " + seen.isbn());
+        }
+    }
+
+    // The handler holds the first event until released, so only the first
+    // lap fits and everything after it is dropped.
+    @Test
+    void dropCountsEventsThatFindTheRingFull() throws Exception {
+        Library library = SyntheticCatalog.create(1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+
+        try (LibraryEventStream stream = LibraryEventStream.attach(library, 8,
+                LibraryEventStream.Backpressure.DROP, LibraryEventStream.WaitStrategy.BLOCKING)) {
+            stream.subscribe("slow", (event, endOfBatch) -> {
+                release.await();
+                handled.add(event.sequence());
+            });
+            for (int i = 0; i < 100; i++) {
+                library.addUser(SyntheticCatalog.member(i));
+            }
+            assertEquals(7, stream.lastSequence());
+            assertEquals(92, stream.dropped());
+            release.countDown();
+        }
+
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L), handled);
+    }
+
+    @Test
+    void closeDrainsWhatWasAlreadyPublished() throws Exception {
+        Library library = SyntheticCatalog.create(1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+        LibraryEventStream stream = LibraryEventStream.attach(library, 1024,
+                LibraryEventStream.Backpressure.BLOCK, LibraryEventStream.WaitStrategy.BLOCKING);
+        stream.subscribe("slow", (event, endOfBatch) -> {
+            release.await();
+            handled.add(event.sequence());
+        });
+        for (int i = 0; i < 200; i++) {
+            library.addUser(SyntheticCatalog.member(i));
+        }
+
+        Thread closer = Thread.ofPlatform().start(stream::close);
+        while (closer.getState() != Thread.State.WAITING) {
+            Thread.onSpinWait();
+        }
+        library.addUser(SyntheticCatalog.member(200));
+        release.countDown();
+        closer.join();
+
+        assertEquals(200, handled.size());
+        for (int i = 0; i < handled.size(); i++) {
+            assertEquals((long) i, handled.get(i));
+        }
+        assertEquals(0, stream.dropped());
+    }
+
+    private static Seen seen(LibraryEvent event) {
+        return new Seen(event.sequence(), event.type(), event.isbn());
+    }
+}
@@ -0,0 +1,67 @@
+package com.libraryapp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+// Ranking of the typo-tolerant search over the sample catalog, and the plain
+// search that a blank query falls back to.
+class LibrarySearchTest {
+
+    private final Library library = Data.createLibrary();
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "Effective Java   | Effective Java",
+            "efective jva     | Effective Java",
+            "Effective        | Effective Java",
+            "joshua bloch     | Effective Java",
+            "Kahnemann        | 'Thinking, Fast and Slow'",
+            "selfsh gene      | The Selfish Gene",
+            "design paterns   | Head First Design Patterns",
+            "Introduction     | Introduction to Algorithms",
+            "dragon bal       | Dragon Ball",
+    })
+    void bestMatchComesFirst(String query, String title) {
+        List<SearchHit> hits = library.fuzzySearchBooks(query, 5);
+        assertFalse(hits.isEmpty(), query);
+        assertEquals(title, hits.get(0).book().getTitle(), query);
+        for (int i = 1; i < hits.size(); i++) {
+            assertTrue(hits.get(i - 1).score() >= hits.get(i).score(), query + " ranked out of order");
+        }
+    }
+
+    @Test
+    void exactMatchOutranksATypo() {
+        double exact = library.fuzzySearchBooks("Effective Java", 1).get(0).score();
+        double typo = library.fuzzySearchBooks("Efective Java", 1).get(0).score();
+        assertTrue(exact > typo, exact + " vs " + typo);
+    }
+
+    @Test
+    void resultsAreCutToTheLimit() {
+        Library large = SyntheticCatalog.create(5_000, 0);
+        List<SearchHit> hits = large.fuzzySearchBooks("garden", 20);
+        assertEquals(20, hits.size());
+        assertEquals(hits.stream().sorted(SearchHit.BEST_FIRST).toList(), hits);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "   "})
+    void blankQueriesMatchEveryBookInThePlainSearch(String query) {
+        assertEquals(List.of(), library.fuzzySearchBooks(query, 20));
+        assertEquals(library.streamItems(item -> true).count(), library.searchBooks(query.trim()).size());
+    }
+
+    @Test
+    void unrelatedQueriesFindNothing() {
+        assertEquals(List.of(), library.fuzzySearchBooks("zzzzqqqq", 5));
+    }
+}
@@ -0,0 +1,188 @@
+package com.libraryapp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Reopens stores on a local directory and checks that what a call reported
+// done is still there, with and without a checkpoint in between.
+class LibraryStoreTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 1);
+
+    // once a store has a snapshot it must never fall back to the seed
+    private static final Supplier<Library> NO_SEED = () -> {
+        throw new AssertionError("seed used although the directory has a snapshot");
+    };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void mutationsSurviveReopen() throws Exception {
+        try (LibraryStore store = LibraryStore.open(dir, () -> SyntheticCatalog.create(10, 5))) {
+            Library library = store.library();
+            library.borrowBook(SyntheticCatalog.memberId(0), SyntheticCatalog.isbn(0), TODAY);
+            library.borrowBook(SyntheticCatalog.memberId(1), SyntheticCatalog.isbn(1), TODAY);
+            library.returnBook(SyntheticCatalog.memberId(1), SyntheticCatalog.isbn(1), TODAY.plusDays(3));
+            library.addBook(SyntheticCatalog.book(10));
+            library.addUser(SyntheticCatalog.member(5));
+        }
+
+        try (LibraryStore store = LibraryStore.open(dir, NO_SEED)) {
+            Library library = store.library();
+            assertEquals(List.of(SyntheticCatalog.isbn(0)), library.streamLoans().map(LoanRecord::isbn).toList());
+            assertEquals(1, library.findLoanHistory(SyntheticCatalog.memberId(1)).size());
+            assertTrue(library.lookupBookByIsbn(SyntheticCatalog.isbn(10)).isPresent());
+            assertTrue(library.lookupUserById(SyntheticCatalog.memberId(5)).isPresent());
+        }
+    }
+
+    @Test
+    void checkpointReplacesOlderSegmentsAndSnapshots() throws Exception {
+        try (LibraryStore store = LibraryStore.open(dir, () -> SyntheticCatalog.create(10, 5))) {
+            Library library = store.library();
+            library.borrowBook(SyntheticCatalog.memberId(0), SyntheticCatalog.isbn(0), TODAY);
+            store.checkpoint();
+            library.borrowBook(SyntheticCatalog.memberId(1), SyntheticCatalog.isbn(1), TODAY);
+        }
+        assertEquals(1, files("snapshot-").size());
+
+        try (LibraryStore store = LibraryStore.open(dir, NO_SEED)) {
+            assertEquals(2, store.library().streamLoans().count());
+        }
+    }
+
+    // With a long commit interval, a call that returned before its fsync
+    // would leave its record only in memory when the directory is copied.
+    @Test
+    void callsReturnOnlyOnceTheirRecordsAreOnDisk(@TempDir Path copy) throws Exception {
+        LoanOutcome borrowed;
+        try (LibraryStore store = LibraryStore.open(dir, () -> SyntheticCatalog.create(10, 5),
+                1024 * 1024, 500, 3600)) {
+            borrowed = store.library().tryBorrow(SyntheticCatalog.memberId(0), SyntheticCatalog.isbn(0), TODAY);
+            assertInstanceOf(LoanRecord.class, borrowed);
+            for (Path file : files("")) {
+                Files.copy(file, copy.resolve(file.getFileName()));
+            }
+        }
+
+        try (LibraryStore store = LibraryStore.open(copy, NO_SEED)) {
+            assertEquals(List.of(borrowed), store.library().streamLoans().toList());
+        }
+    }
+
+    @Test
+    void tornLogTailIsIgnored() throws Exception {
+        try (LibraryStore store = LibraryStore.open(dir, () -> SyntheticCatalog.create(10, 5))) {
+            store.library().borrowBook(SyntheticCatalog.memberId(0), SyntheticCatalog.isbn(0), TODAY);
+            store.library().borrowBook(SyntheticCatalog.memberId(1), SyntheticCatalog.isbn(1), TODAY);
+        }
+        List<Path> segments = files("wal-");
+        Path segment = segments.get(segments.size() - 1);
+        byte[] bytes = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(bytes, bytes.length - 5));
+
+        try (LibraryStore store = LibraryStore.open(dir, NO_SEED)) {
+            assertEquals(List.of(SyntheticCatalog.isbn(0)),
+                    store.library().streamLoans().map(LoanRecord::isbn).toList());
+        }
+    }
+
+    // copies added while a checkpoint writes its snapshot go to the new
+    // segment only; counting them in the snapshot too would add them twice
+    @Test
+    void copiesAddedDuringCheckpointAreCountedOnce() throws Exception {
+        Isbn isbn = SyntheticCatalog.isbn(1999);
+        int added = 1000;
+        try (LibraryStore store = LibraryStore.open(dir, () -> SyntheticCatalog.create(2000, 5))) {
+            Library library = store.library();
+            Thread adder = new Thread(() -> {
+                try {
+                    for (int i = 0; i < added; i++) {
+                        library.addCopies(isbn, 1, TODAY);
+                    }
+                } catch (LibraryException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            adder.start();
+            while (adder.isAlive()) {
+                store.checkpoint();
+            }
+            adder.join();
+        }
+
+        try (LibraryStore store = LibraryStore.open(dir, NO_SEED)) {
+            BookItem book = store.library().lookupBookByIsbn(isbn).orElseThrow();
+            assertEquals(1 + added, book.getCopies());
+        }
+    }
+
+    @Test
+    void holdsSurviveReplay() throws Exception {
+        checkHoldsSurviveReopen(false);
+    }
+
+    @Test
+    void holdsSurviveSnapshot() throws Exception {
+        checkHoldsSurviveReopen(true);
+    }
+
+    // M1 ends up with the returned copy set aside, M2 still waits, M3 left
+    // the queue, and M4's hold expired and passed its copy on to M5
+    private void checkHoldsSurviveReopen(boolean checkpoint) throws Exception {
+        Isbn isbn = SyntheticCatalog.isbn(0);
+        Isbn other = SyntheticCatalog.isbn(1);
+        try (LibraryStore store = LibraryStore.open(dir, () -> SyntheticCatalog.create(10, 6))) {
+            Library library = store.library();
+            library.borrowBook(SyntheticCatalog.memberId(0), other, TODAY);
+            library.placeHold(SyntheticCatalog.memberId(4), other);
+            library.placeHold(SyntheticCatalog.memberId(5), other);
+            library.returnBook(SyntheticCatalog.memberId(0), other, TODAY.plusDays(1));
+            assertEquals(1, library.expireReservations(TODAY.plusDays(5)));
+
+            library.borrowBook(SyntheticCatalog.memberId(0), isbn, TODAY);
+            for (int member = 1; member <= 3; member++) {
+                assertEquals(HoldStatus.QUEUED, library.placeHold(SyntheticCatalog.memberId(member), isbn));
+            }
+            assertTrue(library.cancelHold(SyntheticCatalog.memberId(3), isbn, TODAY));
+            library.returnBook(SyntheticCatalog.memberId(0), isbn, TODAY.plusDays(6));
+            if (checkpoint) {
+                store.checkpoint();
+            }
+        }
+
+        try (LibraryStore store = LibraryStore.open(dir, NO_SEED)) {
+            Library library = store.library();
+            assertEquals(List.of(new Reservation(isbn, SyntheticCatalog.memberId(1), 1,
+                    TODAY.plusDays(6), TODAY.plusDays(9))), library.reservationsFor(isbn));
+            assertEquals(1, library.holdPosition(SyntheticCatalog.memberId(2), isbn));
+            assertEquals(0, library.holdPosition(SyntheticCatalog.memberId(3), isbn));
+            assertEquals(List.of(SyntheticCatalog.memberId(5)),
+                    library.reservationsFor(other).stream().map(Reservation::memberId).toList());
+
+            assertEquals(LoanStatus.RESERVED, library.tryBorrow(SyntheticCatalog.memberId(2), isbn, TODAY.plusDays(7)));
+            assertInstanceOf(LoanRecord.class, library.tryBorrow(SyntheticCatalog.memberId(1), isbn, TODAY.plusDays(7)));
+            assertEquals(List.of(), library.reservationsFor(isbn));
+        }
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(prefix)).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.libraryapp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+// Checks history, borrow counts and range scans against a plain list of the
+// same closed loans, with months open, sealed, and sealed with late returns.
+class LoanArchiveTest {
+
+    private static final LocalDate START = LocalDate.of(2026, 1, 1);
+    private static final int MEMBERS = 12;
+    private static final int TITLES = 8;
+
+    private static final Comparator<ClosedLoan> BY_RETURN_DATE =
+            Comparator.comparing(ClosedLoan::returnDate).thenComparingInt(c -> c.loan().loanId());
+
+    private final LoanArchive archive = new LoanArchive();
+    private final List<ClosedLoan> loans = new ArrayList<>();
+    private int nextLoanId = 1;
+
+    @Test
+    void openMonthsAnswerLikeAScan() {
+        // every return in one month, so nothing is sealed behind our back
+        archiveLoans(2_000, START, 0);
+        assertEquals(0, archive.sealBefore(YearMonth.of(2026, 1)));
+        assertMatchesScan();
+    }
+
+    @Test
+    void sealedMonthsAnswerLikeAScan() {
+        archiveLoans(4_000, START, 100);
+        archive.sealBefore(YearMonth.of(2026, 4));
+        assertEquals(loans.size(), archive.size());
+        assertMatchesScan();
+    }
+
+    // returns dated into months that are already sealed become extra segments
+    @Test
+    void lateReturnsIntoSealedMonthsAreFound() {
+        archiveLoans(3_000, START, 100);
+        archive.sealBefore(YearMonth.of(2026, 4));
+        archiveLoans(500, START.plusDays(20), 40);
+        archive.sealBefore(YearMonth.of(2026, 4));
+        assertMatchesScan();
+    }
+
+    @Test
+    void rangeScanCrossesSealedAndOpenMonths() {
+        archiveLoans(4_000, START, 100);
+        archive.sealBefore(YearMonth.of(2026, 3));
+        LocalDate from = LocalDate.of(2026, 2, 10);
+        LocalDate to = LocalDate.of(2026, 3, 20);
+
+        List<ClosedLoan> scanned = archive.returnedBetween(from, to).toList();
+        List<ClosedLoan> expected = loans.stream()
+                .filter(c -> !c.returnDate().isBefore(from) && !c.returnDate().isAfter(to))
+                .sorted(BY_RETURN_DATE)
+                .toList();
+        assertTrue(expected.stream().anyMatch(c -> c.returnDate().getMonthValue() == 2));
+        assertTrue(expected.stream().anyMatch(c -> c.returnDate().getMonthValue() == 3));
+        assertEquals(expected, scanned);
+        assertEquals(List.of(), archive.returnedBetween(to, from).toList());
+    }
+
+    private void assertMatchesScan() {
+        for (int m = 0; m < MEMBERS; m++) {
+            String member = SyntheticCatalog.memberId(m);
+            assertEquals(loans.stream().filter(c -> c.memberId().equals(member)).sorted(BY_RETURN_DATE).toList(),
+                    archive.historyOf(member), member);
+        }
+        assertEquals(List.of(), archive.historyOf("nobody"));
+
+        LocalDate end = START.plusDays(130);
+        for (LocalDate from = START.minusDays(5); from.isBefore(end); from = from.plusDays(17)) {
+            for (LocalDate to = from; to.isBefore(end); to = to.plusDays(23)) {
+                LocalDate first = from;
+                LocalDate last = to;
+                for (int t = 0; t < TITLES; t++) {
+                    Isbn isbn = SyntheticCatalog.isbn(t);
+                    long expected = loans.stream()
+                            .filter(c -> c.isbn().equals(isbn))
+                            .filter(c -> !c.loan().borrowDate().isBefore(first) && !c.loan().borrowDate().isAfter(last))
+                            .count();
+                    assertEquals(expected, archive.borrowCount(isbn, first, last), isbn + " " + first + ".." + last);
+                }
+                assertEquals(loans.stream()
+                                .filter(c -> !c.returnDate().isBefore(first) && !c.returnDate().isAfter(last))
+                                .sorted(BY_RETURN_DATE)
+                                .toList(),
+                        archive.returnedBetween(first, last).toList(), first + ".." + last);
+            }
+        }
+    }
+
+    // count loans borrowed from start onwards over spreadDays days, each kept
+    // out for up to three weeks
+    private void archiveLoans(int count, LocalDate start, int spreadDays) {
+        SplittableRandom random = new SplittableRandom(nextLoanId);
+        for (int i = 0; i < count; i++) {
+            LocalDate borrowed = start.plusDays(spreadDays == 0 ? 0 : random.nextInt(spreadDays));
+            LocalDate returned = spreadDays == 0 ? borrowed : borrowed.plusDays(random.nextInt(22));
+            LoanRecord record = new LoanRecord(nextLoanId++, SyntheticCatalog.isbn(random.nextInt(TITLES)),
+                    SyntheticCatalog.memberId(random.nextInt(MEMBERS)), borrowed, borrowed.plusDays(14), 1);
+            archive.archive(record, returned);
+            loans.add(new ClosedLoan(record, returned));
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.libraryapp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+// Routing, scatter-gather merges and rebalancing of a ShardedLibrary, checked
+// against the shards directly through the in-process transport.
+@Timeout(value = 120, unit = TimeUnit.SECONDS)
+class ShardedLibraryTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 1);
+    private static final int BOOKS = 400;
+    private static final int MEMBERS = 16;
+
+    // what the shards' listeners heard, e.g. "added 979..." or "reserved 979... M1"
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    private final InProcessShardTransport transport = new InProcessShardTransport(3, this::shard);
+    private final ShardedLibrary library = new ShardedLibrary(transport);
+
+    @Test
+    void booksAndLoansLiveOnlyOnTheOwningShard() throws Exception {
+        fill();
+        for (int i = 0; i < BOOKS; i += 7) {
+            library.borrowBook(SyntheticCatalog.memberId(i % MEMBERS), SyntheticCatalog.isbn(i), TODAY);
+        }
+
+        for (int i = 0; i < BOOKS; i++) {
+            Isbn isbn = SyntheticCatalog.isbn(i);
+            int owner = library.shardOf(isbn);
+            for (int shard = 0; shard < library.shardCount(); shard++) {
+                Library s = transport.shard(shard);
+                assertEquals(shard == owner, s.lookupBookByIsbn(isbn).isPresent(), isbn + " on shard " + shard);
+                assertEquals(shard == owner && i % 7 == 0, !s.activeLoansOf(isbn).isEmpty(), isbn + " loans on shard " + shard);
+            }
+        }
+        for (int shard = 0; shard < library.shardCount(); shard++) {
+            assertTrue(transport.shard(shard).lookupUserById(SyntheticCatalog.memberId(0)).isPresent());
+        }
+    }
+
+    @Test
+    void mergedListingsMatchOneLibrary() throws Exception {
+        fill();
+        Library single = SyntheticCatalog.create(BOOKS, MEMBERS);
+        for (int i = 0; i < BOOKS; i += 5) {
+            LocalDate on = TODAY.plusDays(i % 11);
+            library.borrowBook(SyntheticCatalog.memberId(i % MEMBERS), SyntheticCatalog.isbn(i), on);
+            single.borrowBook(SyntheticCatalog.memberId(i % MEMBERS), SyntheticCatalog.isbn(i), on);
+        }
+
+        List<LibraryItem> items = library.findItems(item -> true);
+        assertEquals(BOOKS, items.size());
+        assertSorted(items, Comparator.comparing(LibraryItem::getId));
+
+        for (String query : List.of("java", "river garden", "shadow 17", "nothing-matches")) {
+            List<BookItem> hits = library.searchBooks(query);
+            assertSorted(hits, Comparator.comparing(LibraryItem::getId));
+            assertEquals(isbns(single.searchBooks(query)).stream().sorted(Comparator.comparing(Isbn::value)).toList(),
+                    isbns(hits).stream().sorted(Comparator.comparing(Isbn::value)).toList(), query);
+        }
+
+        List<LoanRecord> loans = library.findActiveLoans();
+        assertEquals(single.streamLoans().count(), loans.size());
+        assertSorted(loans, Comparator.comparing(LoanRecord::borrowDate));
+        List<LoanRecord> overdue = library.findOverdueLoans(TODAY.plusDays(60));
+        assertEquals(single.findOverdueLoans(TODAY.plusDays(60)).size(), overdue.size());
+        assertSorted(overdue, Comparator.comparing(LoanRecord::dueDate));
+
+        List<SearchHit> fuzzy = library.fuzzySearchBooks("dragn", 10);
+        assertEquals(10, fuzzy.size());
+        assertSorted(fuzzy, SearchHit.BEST_FIRST);
+    }
+
+    @Test
+    void addShardKeepsEveryLoanUnderConcurrentBorrows() throws Exception {
+        fill();
+        Map<String, Boolean> lent = new ConcurrentHashMap<>();
+        AtomicBoolean rebalancing = new AtomicBoolean(true);
+        AtomicInteger calls = new AtomicInteger();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(Thread.ofPlatform().start(() -> {
+                SplittableRandom random = new SplittableRandom(thread);
+                String member = SyntheticCatalog.memberId(thread);
+                try {
+                    // threads own disjoint titles, so every outcome is known up front
+                    while (rebalancing.get() || calls.get() < 2_000) {
+                        Isbn isbn = SyntheticCatalog.isbn(thread + 4 * random.nextInt(BOOKS / 4));
+                        String key = member + " " + isbn.value();
+                        if (lent.remove(key) != null) {
+                            assertInstanceOf(LoanRecord.class, library.tryReturn(member, isbn, TODAY));
+                        } else {
+                            assertInstanceOf(LoanRecord.class, library.tryBorrow(member, isbn, TODAY));
+                            lent.put(key, true);
+                        }
+                        calls.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        int moved;
+        try {
+            moved = library.addShard();
+        } finally {
+            rebalancing.set(false);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(List.of(), errors);
+        assertTrue(moved > 0);
+        assertEquals(BOOKS, library.findItems(item -> true).size());
+        assertEquals(lent.keySet(), Set.copyOf(library.findActiveLoans().stream()
+                .map(loan -> loan.memberId() + " " + loan.isbn().value()).toList()));
+        for (int i = 0; i < BOOKS; i++) {
+            Isbn isbn = SyntheticCatalog.isbn(i);
+            for (int shard = 0; shard < library.shardCount(); shard++) {
+                assertEquals(shard == library.shardOf(isbn), transport.shard(shard).lookupBookByIsbn(isbn).isPresent(),
+                        isbn + " on shard " + shard);
+            }
+        }
+    }
+
+    // Every title is lent to M0 and held by M1 and M2; the even ones are then
+    // returned, so M1 has a copy set aside and M2 is still waiting.
+    @Test
+    void addShardMovesHoldsAndReservations() throws Exception {
+        fill();
+        for (int i = 0; i < BOOKS; i++) {
+            Isbn isbn = SyntheticCatalog.isbn(i);
+            library.borrowBook(SyntheticCatalog.memberId(0), isbn, TODAY);
+            library.placeHold(SyntheticCatalog.memberId(1), isbn);
+            library.placeHold(SyntheticCatalog.memberId(2), isbn);
+            if (i % 2 == 0) {
+                library.returnBook(SyntheticCatalog.memberId(0), isbn, TODAY.plusDays(1));
+            }
+        }
+        events.clear();
+
+        int moved = library.addShard();
+
+        assertTrue(moved > 0);
+        int newShard = library.shardCount() - 1;
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            Isbn isbn = SyntheticCatalog.isbn(i);
+            Library owner = transport.shard(library.shardOf(isbn));
+            if (library.shardOf(isbn) == newShard) {
+                expected.add("added " + isbn.value());
+                expected.add("removed " + isbn.value());
+                expected.add(i % 2 == 0 ? "reserved " + isbn.value() + " M1" : "borrowed " + isbn.value() + " M0");
+                if (i % 2 != 0) {
+                    expected.add("held " + isbn.value() + " M1");
+                }
+                expected.add("held " + isbn.value() + " M2");
+            }
+            if (i % 2 == 0) {
+                assertEquals(List.of(new Reservation(isbn, SyntheticCatalog.memberId(1), 1,
+                        TODAY.plusDays(1), TODAY.plusDays(4))), owner.reservationsFor(isbn), isbn.value());
+                assertEquals(1, owner.holdPosition(SyntheticCatalog.memberId(2), isbn), isbn.value());
+                assertEquals(LoanStatus.RESERVED, library.tryBorrow(SyntheticCatalog.memberId(3), isbn, TODAY.plusDays(2)));
+            } else {
+                assertEquals(1, owner.holdPosition(SyntheticCatalog.memberId(1), isbn), isbn.value());
+                assertEquals(2, owner.holdPosition(SyntheticCatalog.memberId(2), isbn), isbn.value());
+                assertEquals(1, owner.activeLoansOf(isbn).size(), isbn.value());
+            }
+        }
+        // the tryBorrow calls above are refused and heard by nobody
+        assertEquals(expected.stream().sorted().toList(), events.stream().sorted().toList());
+    }
+
+    private Library shard() {
+        Library shard = new Library(List.of(), List.of(), List.of());
+        shard.addListener(new LibraryListener() {
+            @Override
+            public void onBookAdded(BookItem book) {
+                events.add("added " + book.getIsbn().value());
+            }
+
+            @Override
+            public void onBookRemoved(Isbn isbn) {
+                events.add("removed " + isbn.value());
+            }
+
+            @Override
+            public void onBorrowed(LoanRecord record) {
+                events.add("borrowed " + record.isbn().value() + " " + record.memberId());
+            }
+
+            @Override
+            public void onHoldPlaced(Isbn isbn, String memberId) {
+                events.add("held " + isbn.value() + " " + memberId);
+            }
+
+            @Override
+            public void onReserved(Reservation reservation) {
+                events.add("reserved " + reservation.isbn().value() + " " + reservation.memberId());
+            }
+        });
+        return shard;
+    }
+
+    private void fill() throws LibraryException {
+        for (int i = 0; i < MEMBERS; i++) {
+            library.addUser(SyntheticCatalog.member(i));
+        }
+        for (int i = 0; i < BOOKS; i++) {
+            library.addBook(SyntheticCatalog.book(i));
+        }
+    }
+
+    private static List<Isbn> isbns(List<BookItem> books) {
+        return books.stream().map(BookItem::getIsbn).toList();
+    }
+
+    private static <T> void assertSorted(List<T> list, Comparator<? super T> order) {
+        for (int i = 1; i < list.size(); i++) {
+            assertTrue(order.compare(list.get(i - 1), list.get(i)) <= 0, "out of order at " + i + ": " + list.get(i));
+        }
+    }
+}